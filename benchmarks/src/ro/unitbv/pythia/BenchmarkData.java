@@ -0,0 +1,71 @@
+package ro.unitbv.pythia;
+
+import java.util.Random;
+
+/**
+ * Deterministic inputs and networks shared by the benchmarks
+ */
+final class BenchmarkData {
+
+	static final double RHO_INIT_A = 0.75;
+	static final double BETA_A = 1.0;
+	static final double RHO_AB = 0.5;
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @return count random inputs of dim values in [0, 1]
+	 */
+	static double[][] inputs(int count, int dim, long seed) {
+		Random random = new Random(seed);
+		double result[][] = new double[count][dim];
+		for (double[] input : result) {
+			for (int i = 0; i < dim; i++) {
+				input[i] = random.nextDouble();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return count random labels in [0, classes)
+	 */
+	static int[] labels(int count, int classes, long seed) {
+		Random random = new Random(seed);
+		int result[] = new int[count];
+		for (int t = 0; t < count; t++) {
+			result[t] = random.nextInt(classes);
+		}
+		return result;
+	}
+
+	/**
+	 * Builds a network with exactly points.length categories: category j is
+	 * the point points[j], and its mapfield row is one-hot on labels[j]
+	 */
+	static FAMR famr(double[][] points, int[] labels, int classes) {
+		FAMR famr = new FAMR(RHO_INIT_A, BETA_A, RHO_AB, 1, 0, 1, classes);
+		FuzzyArt art_a = famr.getArt_a();
+		MapField mapField = famr.getMapField();
+		for (int j = 0; j < points.length; j++) {
+			art_a.newInput(points[j]);
+			art_a.createNewCategory();
+			mapField.addWeight_a();
+			mapField.learn(j, labels[j], 1.0);
+		}
+		return famr;
+	}
+
+	/**
+	 * Builds a Fuzzy ART module whose categories are the given points
+	 */
+	static FuzzyArt fuzzyArt(double[][] points) {
+		FuzzyArt art = new FuzzyArt(RHO_INIT_A, BETA_A);
+		for (double[] point : points) {
+			art.newInput(point);
+			art.createNewCategory();
+		}
+		return art;
+	}
+}
@@ -0,0 +1,87 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FAMR training of one pair and classification. trainPair is private: it is
+ * reached through trainOne, which adds only a timer. The training inputs are
+ * the points of existing categories, so the network keeps its size:
+ * - trainAccepted presents a point with the label of its category, which
+ *   learns it;
+ * - trainRejected presents a point with another label: the mapfield rejects
+ *   the category, match tracking raises the vigilance over 1 and the pair is
+ *   rolled back, from the journal or from clones of art_a and the mapfield.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FAMRBenchmark {
+
+	private static final int QUERIES = 1024; // a power of 2
+
+	@Param({ "4", "16", "64" })
+	int dim;
+
+	@Param({ "100", "1000", "10000" })
+	int categories;
+
+	@Param({ "2", "10", "100" })
+	int classes;
+
+	@Param({ "false", "true" })
+	boolean cloneRollback;
+
+	private double points[][];
+	private int labels[];
+	private FAMR famr;
+	private Pattern queries[];
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		Settings.debugMode = false; // classification would log every pattern
+		points = BenchmarkData.inputs(categories, dim, 1);
+		labels = BenchmarkData.labels(categories, classes, 2);
+		famr = BenchmarkData.famr(points, labels, classes);
+		famr.setCloneRollback(cloneRollback);
+		double inputs[][] = BenchmarkData.inputs(QUERIES, dim, 3);
+		queries = new Pattern[QUERIES];
+		for (int t = 0; t < QUERIES; t++) {
+			queries[t] = new Pattern();
+			queries[t].setInput(inputs[t]);
+			queries[t].scaleInput(0, 1);
+		}
+	}
+
+	@Benchmark
+	public TrainingOutcome trainAccepted() {
+		int j = next++ % categories;
+		return famr.trainOne(points[j], labels[j], 1.0);
+	}
+
+	@Benchmark
+	public TrainingOutcome trainRejected() {
+		int j = next++ % categories;
+		return famr.trainOne(points[j], (labels[j] + 1) % classes, 1.0);
+	}
+
+	@Benchmark
+	public int classifySingleInstance() {
+		return famr.classifySingleInstance(queries[next++ & (QUERIES - 1)]);
+	}
+}
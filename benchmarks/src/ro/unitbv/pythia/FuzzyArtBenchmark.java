@@ -0,0 +1,77 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Category search and learning of FuzzyArt. computeT is private: it is
+ * measured by findCategoryExhaustive, which computes T for every category
+ * and takes the maximum. learn is called with the point of the learning
+ * category as input, so the network does not change between calls.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FuzzyArtBenchmark {
+
+	private static final int QUERIES = 1024; // a power of 2
+
+	@Param({ "4", "16", "64" })
+	int dim;
+
+	@Param({ "100", "1000", "10000" })
+	int categories;
+
+	private double points[][];
+	private double queries[][];
+	private FuzzyArt exhaustive;
+	private FuzzyArt pruned;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		points = BenchmarkData.inputs(categories, dim, 1);
+		queries = BenchmarkData.inputs(QUERIES, dim, 2);
+		exhaustive = BenchmarkData.fuzzyArt(points);
+		exhaustive.setPruning(false);
+		pruned = BenchmarkData.fuzzyArt(points);
+	}
+
+	@Benchmark
+	public void newInput() {
+		pruned.newInput(queries[next++ & (QUERIES - 1)]);
+	}
+
+	@Benchmark
+	public int findCategoryExhaustive() {
+		exhaustive.newInput(queries[next++ & (QUERIES - 1)]);
+		return exhaustive.findCategory();
+	}
+
+	@Benchmark
+	public int findCategoryPruned() {
+		pruned.newInput(queries[next++ & (QUERIES - 1)]);
+		return pruned.findCategory();
+	}
+
+	@Benchmark
+	public void learn() {
+		int j = next++ % categories;
+		pruned.newInput(points[j]);
+		pruned.learn(j);
+	}
+}
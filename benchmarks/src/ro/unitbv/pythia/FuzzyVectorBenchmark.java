@@ -0,0 +1,50 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FuzzyVector.and and norm; and allocates its result
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FuzzyVectorBenchmark {
+
+	@Param({ "4", "16", "64", "256" })
+	int dim;
+
+	private FuzzyVector a;
+	private FuzzyVector b;
+
+	@Setup
+	public void setup() {
+		double inputs[][] = BenchmarkData.inputs(2, 2 * dim, 1);
+		a = new FuzzyVector(inputs[0]);
+		b = new FuzzyVector(inputs[1]);
+	}
+
+	@Benchmark
+	public FuzzyVector and() {
+		return a.and(b);
+	}
+
+	@Benchmark
+	public double norm() {
+		return a.norm();
+	}
+}
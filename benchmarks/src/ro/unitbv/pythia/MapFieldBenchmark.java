@@ -0,0 +1,81 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * MapField learning, acceptance test and row creation, for dense and sparse
+ * rows. addWeight_a fills a new mapfield of ROWS rows per invocation, so the
+ * amortized cost of growing the matrix is included.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapFieldBenchmark {
+
+	private static final int ROWS = 1000;
+	private static final int PAIRS = 1024; // a power of 2
+
+	@Param({ "100", "1000", "10000" })
+	int categories;
+
+	@Param({ "2", "10", "100" })
+	int classes;
+
+	@Param({ "false", "true" })
+	boolean sparse;
+
+	private MapField mapField;
+	private int rows[];
+	private int labels[];
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		mapField = new MapField(BenchmarkData.RHO_AB, classes, false, 0, sparse);
+		int rowLabels[] = BenchmarkData.labels(categories, classes, 1);
+		for (int j = 0; j < categories; j++) {
+			mapField.addWeight_a();
+			mapField.learn(j, rowLabels[j], 1.0);
+		}
+		rows = BenchmarkData.labels(PAIRS, categories, 2);
+		labels = BenchmarkData.labels(PAIRS, classes, 3);
+	}
+
+	@Benchmark
+	public void learn() {
+		int t = next++ & (PAIRS - 1);
+		mapField.learn(rows[t], labels[t], 1.0);
+	}
+
+	@Benchmark
+	public boolean accept() {
+		int t = next++ & (PAIRS - 1);
+		return mapField.accept(rows[t], labels[t]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public MapField addWeight_a() {
+		MapField result = new MapField(BenchmarkData.RHO_AB, classes, false, 0, sparse);
+		for (int j = 0; j < ROWS; j++) {
+			result.addWeight_a();
+		}
+		return result;
+	}
+}
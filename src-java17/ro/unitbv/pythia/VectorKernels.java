@@ -0,0 +1,134 @@
+package ro.unitbv.pythia;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD kernels on top of the Java Vector API (jdk.incubator.vector). This
+ * class is compiled for Java 17 into META-INF/versions/17 of the
+ * multi-release jar and is loaded by Kernels only when the JVM was started
+ * with --add-modules jdk.incubator.vector, and only when selected through
+ * ro.unitbv.pythia.kernels (see Kernels). Sums are accumulated lane-wise, so
+ * they may differ from the scalar ones in the last bits, which may change the
+ * trained categories. The single precision
+ * and mapped-buffer kernels are inherited from ScalarKernels.
+ */
+final class VectorKernels extends ScalarKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public double minSum(double[] x, double[] w, int offset, int length) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector a = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector b = DoubleVector.fromArray(SPECIES, w, offset + i);
+			acc = acc.add(a.min(b));
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			sum += Math.min(x[i], w[offset + i]);
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(double[] w, int offset, int length) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			acc = acc.add(DoubleVector.fromArray(SPECIES, w, offset + i));
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			sum += w[offset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double learn(double[] x, double[] w, int offset, int length, double beta) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector a = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector b = DoubleVector.fromArray(SPECIES, w, offset + i);
+			DoubleVector value = a.min(b).mul(beta).add(b.mul(1 - beta));
+			value.intoArray(w, offset + i);
+			acc = acc.add(value);
+		}
+		double norm = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			double value = beta * Math.min(x[i], w[offset + i]) + (1 - beta) * w[offset + i];
+			w[offset + i] = value;
+			norm += value;
+		}
+		return norm;
+	}
+
+	@Override
+	public void min(double[] a, double[] b, double[] result, int length) {
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, a, i).min(DoubleVector.fromArray(SPECIES, b, i)).intoArray(result, i);
+		}
+		for (; i < length; i++) {
+			result[i] = Math.min(a[i], b[i]);
+		}
+	}
+
+	@Override
+	public void moveTowards(double[] w, int offset, int length, int k, double rate) {
+		double target = k >= 0 && k < length ? w[offset + k] : 0;
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			// same operations as the scalar loop, lane by lane: no fma
+			DoubleVector value = DoubleVector.fromArray(SPECIES, w, offset + i);
+			value.add(value.neg().mul(rate)).intoArray(w, offset + i);
+		}
+		for (; i < length; i++) {
+			double value = w[offset + i];
+			w[offset + i] = value + rate * (0 - value);
+		}
+		if (k >= 0 && k < length) {
+			w[offset + k] = target + rate * (1 - target);
+		}
+	}
+
+	@Override
+	public double absSum(double[] v, int length) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			acc = acc.add(DoubleVector.fromArray(SPECIES, v, i).abs());
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			sum += Math.abs(v[i]);
+		}
+		return sum;
+	}
+
+	@Override
+	public double prod(double[] a, double[] b, int length) {
+		DoubleVector acc = DoubleVector.zero(SPECIES);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			acc = DoubleVector.fromArray(SPECIES, a, i).fma(DoubleVector.fromArray(SPECIES, b, i), acc);
+		}
+		double prod = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < length; i++) {
+			prod += a[i] * b[i];
+		}
+		return prod;
+	}
+}
@@ -0,0 +1,76 @@
+package ro.unitbv.pythia;
+
+/**
+ * Result of a batch classification: for each input, in input order, the
+ * inferred label and the winning art_a category
+ */
+public final class BatchClassification {
+
+	private final int labels[];
+	private final int categories[];
+
+	/**
+	 * @param size
+	 *            the number of classified inputs
+	 */
+	BatchClassification(int size) {
+		this.labels = new int[size];
+		this.categories = new int[size];
+	}
+
+	/**
+	 * @param i
+	 *            the position of the input in the batch
+	 * @return the inferred label; -1 if the network has no category
+	 */
+	public int getLabel(int i) {
+		return labels[i];
+	}
+
+	/**
+	 * @param i
+	 *            the position of the input in the batch
+	 * @return the index of the winning art_a category; -1 if the network has
+	 *         no category
+	 */
+	public int getCategory(int i) {
+		return categories[i];
+	}
+
+	/**
+	 * @return the inferred labels, in input order; the array is not copied
+	 */
+	public int[] getLabels() {
+		return labels;
+	}
+
+	/**
+	 * @return the winning art_a categories, in input order; the array is not
+	 *         copied
+	 */
+	public int[] getCategories() {
+		return categories;
+	}
+
+	/**
+	 * @return the number of classified inputs
+	 */
+	public int size() {
+		return labels.length;
+	}
+
+	/**
+	 * Stores the outcome for input i
+	 *
+	 * @param i
+	 *            the position of the input in the batch
+	 * @param category
+	 *            the winning category
+	 * @param label
+	 *            the inferred label
+	 */
+	void set(int i, int category, int label) {
+		categories[i] = category;
+		labels[i] = label;
+	}
+}
@@ -0,0 +1,191 @@
+package ro.unitbv.pythia;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Patterns read from a binary file of fixed-size little-endian rows:
+ * <pre>
+ * header:  int magic ('F' 'A' 'M' 'P'), int version, int inputDim, int 0
+ * row:     int classIndex, int 0, double q_t, double input[inputDim]
+ * </pre>
+ * The inputs are not scaled. The file is read again, through a buffered
+ * channel, for each pass.
+ */
+public final class BinaryPatternSource implements PatternSource {
+
+	static final int MAGIC = 'F' | 'A' << 8 | 'M' << 16 | 'P' << 24;
+	static final int VERSION = 1;
+	private static final int HEADER_BYTES = 16;
+	private static final int BUFFER_BYTES = 1 << 16;
+
+	private final File file;
+	private final int inputDim;
+
+	/**
+	 * @param file
+	 *            a file written by write
+	 * @throws IOException
+	 *             if the header cannot be read or is not valid
+	 */
+	public BinaryPatternSource(File file) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a pattern file");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Unsupported pattern file version " + header.getInt(4) + " in " + file);
+			}
+			this.inputDim = header.getInt(8);
+		}
+	}
+
+	/**
+	 * Writes patterns to file, replacing its contents. The inputs are written
+	 * as they are, not scaled.
+	 *
+	 * @param patterns
+	 *            the patterns, all with the same input dimension
+	 * @param file
+	 *            the destination
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(Iterable<Pattern> patterns, File file) throws IOException {
+		int inputDim = -1;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(0); // inputDim, known after the first pattern
+			buffer.putInt(0);
+			for (Pattern pattern : patterns) {
+				double input[] = pattern.getInput();
+				if (inputDim == -1) {
+					inputDim = input.length;
+					buffer.putInt(8, inputDim);
+				} else if (input.length != inputDim) {
+					throw new RuntimeException("Size mismatch: expected input of length " + inputDim + ", got "
+							+ input.length);
+				}
+				if (buffer.remaining() < 16 + 8 * inputDim) {
+					flush(channel, buffer);
+				}
+				buffer.putInt(pattern.getClassIndex());
+				buffer.putInt(0);
+				buffer.putDouble(pattern.getWeight());
+				for (double value : input) {
+					if (buffer.remaining() < 8) {
+						flush(channel, buffer);
+					}
+					buffer.putDouble(value);
+				}
+			}
+			flush(channel, buffer);
+		}
+	}
+
+	/**
+	 * @return the input dimension of the patterns
+	 */
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	@Override
+	public PatternStream open() throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		channel.position(HEADER_BYTES);
+		return new Stream(channel);
+	}
+
+	private final class Stream implements PatternStream {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer;
+		private final double input[] = new double[inputDim];
+		private final int rowBytes = 16 + 8 * inputDim;
+		private int classIndex;
+		private double weight;
+
+		Stream(FileChannel channel) {
+			this.channel = channel;
+			this.buffer = ByteBuffer.allocateDirect(Math.max(BUFFER_BYTES, rowBytes)).order(ByteOrder.LITTLE_ENDIAN);
+			((Buffer) buffer).limit(0);
+		}
+
+		@Override
+		public boolean next() throws IOException {
+			if (buffer.remaining() < rowBytes) {
+				buffer.compact();
+				while (buffer.position() < rowBytes) {
+					if (channel.read(buffer) == -1) {
+						break;
+					}
+				}
+				((Buffer) buffer).flip();
+				if (!buffer.hasRemaining()) {
+					return false;
+				}
+				if (buffer.remaining() < rowBytes) {
+					throw new IOException("Truncated pattern file " + file);
+				}
+			}
+			classIndex = buffer.getInt();
+			buffer.getInt();
+			weight = buffer.getDouble();
+			for (int i = 0; i < inputDim; i++) {
+				input[i] = buffer.getDouble();
+			}
+			if (!(weight > 0)) {
+				throw new IOException(file + ": the relevance should be strictly greater than 0");
+			}
+			return true;
+		}
+
+		@Override
+		public double[] input() {
+			return input;
+		}
+
+		@Override
+		public int classIndex() {
+			return classIndex;
+		}
+
+		@Override
+		public double weight() {
+			return weight;
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) == -1) {
+				throw new IOException("Unexpected end of file");
+			}
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		((Buffer) buffer).flip(); // Buffer methods, for Java 8 binaries
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+}
@@ -0,0 +1,94 @@
+package ro.unitbv.pythia;
+
+import java.io.Serializable;
+
+/**
+ * Binary max-heap of category indices, ordered by decreasing choice value T
+ * and, for equal values, by increasing index. Polling it gives the categories
+ * in the same order as repeatedly scanning for the first maximum of T, but
+ * each poll costs O(log n) instead of O(n). The index buffer is reused between
+ * inputs.
+ */
+final class CandidateHeap implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	private int heap[] = new int[16];
+	private int size = 0;
+	private double T[];
+
+	/**
+	 * Builds the heap from the eligible categories, in O(n)
+	 *
+	 * @param T
+	 *            the choice values; not copied, must not change while the
+	 *            heap is used
+	 * @param eligible
+	 *            the categories which may be returned
+	 * @param n
+	 *            the number of categories
+	 */
+	void build(double[] T, boolean[] eligible, int n) {
+		this.T = T;
+		if (heap.length < n) {
+			heap = new int[Math.max(n, 2 * heap.length)];
+		}
+		size = 0;
+		for (int j = 0; j < n; j++) {
+			if (eligible[j]) {
+				heap[size++] = j;
+			}
+		}
+		for (int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	/**
+	 * Removes and returns the best remaining category
+	 *
+	 * @return the index of the category with maximum T (lowest index on
+	 *         ties); -1 if the heap is empty
+	 */
+	int poll() {
+		if (size == 0) {
+			return -1;
+		}
+		int result = heap[0];
+		heap[0] = heap[--size];
+		siftDown(0);
+		return result;
+	}
+
+	/**
+	 * @return the number of remaining categories
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if category a comes before category b
+	 */
+	private boolean before(int a, int b) {
+		return T[a] > T[b] || (T[a] == T[b] && a < b);
+	}
+
+	private void siftDown(int i) {
+		int item = heap[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], item)) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = item;
+	}
+}
@@ -0,0 +1,128 @@
+package ro.unitbv.pythia;
+
+import java.util.Arrays;
+
+/**
+ * Classifier which picks one art_a category per input and reads the
+ * probabilities of its mapfield row: FAMRSnapshot, over heap arrays, and
+ * MappedModel, over a mapped model file. A subclass provides the category
+ * search and the row access; the labels and the probability vectors are
+ * computed here, from the sparse rows when the mapfield is sparse.
+ */
+abstract class CategoryClassifier extends Classifier {
+
+	/**
+	 * @return the number of art_a categories
+	 */
+	public abstract int getInputCategoriesNo();
+
+	/**
+	 * @return the length of an un-normalized input
+	 */
+	public abstract int getInputDim();
+
+	/**
+	 * Same as findCategory(scaledInput), with a caller-provided buffer
+	 *
+	 * @param scaledInput
+	 *            the input, scaled in [0, 1]
+	 * @param scratch
+	 *            buffer of at least 2 * inputDim items, overwritten
+	 * @return the index of the winning category; -1 if the model has no
+	 *         category
+	 */
+	abstract int findCategory(double[] scaledInput, double[] scratch);
+
+	/**
+	 * @param J
+	 *            the index of an art_a category
+	 * @param k
+	 *            the index of a class
+	 * @return the estimated P(class k | category J)
+	 */
+	abstract double probability(int J, int k);
+
+	/**
+	 * @return the mapfield rows, if they are sparse; null otherwise
+	 */
+	abstract SparseRowsView sparseRows();
+
+	/**
+	 * Returns the winning art_a category for scaledInput. Classification uses
+	 * a vigilance of 0, so the winner is the category with the highest choice
+	 * value; ties go to the lowest index.
+	 *
+	 * @param scaledInput
+	 *            the input, scaled in [0, 1]
+	 * @return the index of the winning category; -1 if the model has no
+	 *         category
+	 */
+	public int findCategory(double[] scaledInput) {
+		return findCategory(scaledInput, new double[2 * getInputDim()]);
+	}
+
+	@Override
+	public int classifyInputVector(double[] scaledInput) {
+		return labelOf(findCategory(scaledInput));
+	}
+
+	/**
+	 * Same as classifyInputVector(scaledInput), with a caller-provided buffer
+	 *
+	 * @param scaledInput
+	 *            the input to be classified, scaled in [0, 1]
+	 * @param scratch
+	 *            buffer of at least 2 * inputDim items, overwritten
+	 * @return the inferred label; -1 if the model has no category
+	 */
+	int classifyInputVector(double[] scaledInput, double[] scratch) {
+		return labelOf(findCategory(scaledInput, scratch));
+	}
+
+	@Override
+	public double[] getProbVector(double[] scaledInput) {
+		int J = findCategory(scaledInput);
+		int outputDim = getOutputDim();
+		double result[] = new double[outputDim];
+		SparseRowsView sparse = sparseRows();
+		if (J == -1) {
+			Arrays.fill(result, 1.0 / outputDim);
+		} else if (sparse != null) {
+			sparse.copyRow(J, outputDim, result);
+		} else {
+			for (int k = 0; k < outputDim; k++) {
+				result[k] = probability(J, k);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the class with the maximum conditional probability for category
+	 * J; ties go to the lowest index
+	 *
+	 * @param J
+	 *            the index of an art_a category, or -1
+	 * @return the label; -1 if J is -1
+	 */
+	int labelOf(int J) {
+		if (J == -1) {
+			return -1;
+		}
+		int outputDim = getOutputDim();
+		SparseRowsView sparse = sparseRows();
+		if (sparse != null) {
+			return sparse.posMax(J, outputDim);
+		}
+		int index = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int k = 0; k < outputDim; k++) {
+			double p = probability(J, k);
+			if (max < p) {
+				max = p;
+				index = k;
+			}
+		}
+		return index;
+	}
+}
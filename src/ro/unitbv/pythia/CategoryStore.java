@@ -0,0 +1,564 @@
+package ro.unitbv.pythia;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Storage for the categories of a FuzzyArt network. The complement-coded
+ * weights and the centroids are kept in row-major primitive arrays, one row
+ * per category, so that the hot loops of FuzzyArt never walk lists or unbox
+ * values. The arrays grow by doubling, so adding n categories costs O(n)
+ * amortized copying.
+ *
+ * In single precision mode the weights and the centroids are stored as float;
+ * the computations over a row and the cached norms are still done in double.
+ *
+ * The categories are also kept sorted by decreasing norm (byNorm), which lets
+ * the winner search stop as soon as no remaining category can win.
+ */
+final class CategoryStore implements Serializable, Cloneable {
+
+	private static final long serialVersionUID = 1L;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final boolean singlePrecision;
+	private int inputDim = -1; // length of an un-normalized input
+	private int stride = -1; // length of a complement-coded weight, 2 * inputDim
+	private int size = 0;
+	private int capacity;
+	// exactly one of w / wf and one of centroids / centroidsf is used
+	double w[] = null; // row j starts at j * stride
+	float wf[] = null;
+	double centroids[] = null; // row j starts at j * inputDim
+	float centroidsf[] = null;
+	int category_size[] = null; // number of representants per category
+	double norms[] = null; // cached L1 norm of each weight row
+	int byNorm[] = null; // category indices, by decreasing norm
+	private int rank[] = null; // rank[j] is the position of j in byNorm
+
+	// undo journal: rows changed since mark(), with their previous contents
+	private transient boolean marked = false;
+	private transient int markedSize = 0;
+	private transient int journalLength = 0;
+	private transient int journalRows[] = null;
+	private transient double journalW[] = null;
+	private transient double journalCentroids[] = null;
+	private transient int journalSizes[] = null;
+	private transient double journalNorms[] = null;
+
+	/**
+	 * @param initialCapacity
+	 *            how many categories can be stored before the first growth
+	 */
+	CategoryStore(int initialCapacity) {
+		this(initialCapacity, false);
+	}
+
+	/**
+	 * @param initialCapacity
+	 *            how many categories can be stored before the first growth
+	 * @param singlePrecision
+	 *            true to store weights and centroids as float
+	 */
+	CategoryStore(int initialCapacity, boolean singlePrecision) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("The initial capacity should be non negative");
+		}
+		this.capacity = initialCapacity == 0 ? DEFAULT_CAPACITY : initialCapacity;
+		this.singlePrecision = singlePrecision;
+	}
+
+	/**
+	 * Fixes the input dimension on the first input; afterwards, checks that
+	 * each input has the same dimension.
+	 *
+	 * @param dim
+	 *            the un-normalized input dimension
+	 */
+	void checkInputDim(int dim) {
+		if (inputDim == -1) {
+			inputDim = dim;
+			stride = 2 * dim;
+		} else if (inputDim != dim) {
+			throw new RuntimeException("Size mismatch: expected input of length " + inputDim + ", got " + dim);
+		}
+	}
+
+	/**
+	 * Appends a new category
+	 *
+	 * @param normalizedInput
+	 *            the complement-coded input, copied as the weight of the
+	 *            category
+	 * @param unNormalizedInput
+	 *            the input, copied as the centroid of the category
+	 * @return the index of the new category
+	 */
+	int add(double[] normalizedInput, double[] unNormalizedInput) {
+		ensureCapacity(size + 1);
+		setWeight(size, normalizedInput, 0);
+		setCentroid(size, unNormalizedInput, 0);
+		category_size[size] = 1;
+		updateNorm(size);
+		byNorm[size] = size;
+		rank[size] = size;
+		int j = size++;
+		reorder(j);
+		return j;
+	}
+
+	/**
+	 * Appends a copy of category j of source: weight, centroid and size
+	 *
+	 * @param source
+	 *            a store with the same input dimension
+	 * @param j
+	 *            the index of the category in source
+	 * @return the index of the new category
+	 */
+	int addCopy(CategoryStore source, int j) {
+		checkInputDim(source.inputDim);
+		int k = add(source.getWeight(j), source.getCentroid(j));
+		category_size[k] = source.category_size[j];
+		return k;
+	}
+
+	/**
+	 * Merges category j of source into category k: the weight becomes the
+	 * fuzzy AND of both weights, the smallest box covering both boxes, and
+	 * the centroid becomes the mean of both centroids, weighted by the sizes
+	 *
+	 * @param k
+	 *            the index of the category which absorbs j
+	 * @param source
+	 *            a store with the same input dimension
+	 * @param j
+	 *            the index of the category in source
+	 */
+	void merge(int k, CategoryStore source, int j) {
+		double weight[] = getWeight(k);
+		for (int i = 0; i < stride; i++) {
+			weight[i] = Math.min(weight[i], source.weightAt(j, i));
+		}
+		setWeight(k, weight, 0);
+		double centroid[] = getCentroid(k);
+		double other[] = source.getCentroid(j);
+		int sizeK = category_size[k];
+		int sizeJ = source.category_size[j];
+		for (int i = 0; i < inputDim; i++) {
+			centroid[i] = (sizeK * centroid[i] + sizeJ * other[i]) / (sizeK + sizeJ);
+		}
+		setCentroid(k, centroid, 0);
+		category_size[k] = sizeK + sizeJ;
+		updateNorm(k);
+		reorder(k);
+	}
+
+	/**
+	 * Makes room for at least minCapacity categories
+	 *
+	 * @param minCapacity
+	 *            the requested number of rows
+	 */
+	void ensureCapacity(int minCapacity) {
+		if (category_size == null) {
+			capacity = Math.max(capacity, minCapacity);
+			if (singlePrecision) {
+				wf = new float[capacity * stride];
+				centroidsf = new float[capacity * inputDim];
+			} else {
+				w = new double[capacity * stride];
+				centroids = new double[capacity * inputDim];
+			}
+			category_size = new int[capacity];
+			norms = new double[capacity];
+			byNorm = new int[capacity];
+			rank = new int[capacity];
+			return;
+		}
+		if (minCapacity <= capacity) {
+			return;
+		}
+		int newCapacity = Math.max(minCapacity, 2 * capacity);
+		if (singlePrecision) {
+			wf = Arrays.copyOf(wf, newCapacity * stride);
+			centroidsf = Arrays.copyOf(centroidsf, newCapacity * inputDim);
+		} else {
+			w = Arrays.copyOf(w, newCapacity * stride);
+			centroids = Arrays.copyOf(centroids, newCapacity * inputDim);
+		}
+		category_size = Arrays.copyOf(category_size, newCapacity);
+		norms = Arrays.copyOf(norms, newCapacity);
+		byNorm = Arrays.copyOf(byNorm, newCapacity);
+		rank = Arrays.copyOf(rank, newCapacity);
+		capacity = newCapacity;
+	}
+
+	/**
+	 * Computes |I and w[j]|
+	 *
+	 * @param I
+	 *            the complement-coded input
+	 * @param j
+	 *            the index of the category
+	 * @return the L1 norm of the fuzzy and between I and w[j]
+	 */
+	double match(double[] I, int j) {
+		if (singlePrecision) {
+			return Kernels.minSum(I, wf, j * stride, stride);
+		}
+		return Kernels.minSum(I, w, j * stride, stride);
+	}
+
+	/**
+	 * Applies the Fuzzy ART learning rule to w[j] and refreshes its norm
+	 *
+	 * @param I
+	 *            the complement-coded input
+	 * @param j
+	 *            the index of the learning category
+	 * @param beta
+	 *            the learning rate
+	 */
+	void learnWeight(double[] I, int j, double beta) {
+		if (singlePrecision) {
+			norms[j] = Kernels.learn(I, wf, j * stride, stride, beta);
+		} else {
+			norms[j] = Kernels.learn(I, w, j * stride, stride, beta);
+		}
+		reorder(j);
+	}
+
+	/**
+	 * Moves category j in byNorm, after its norm changed
+	 *
+	 * @param j
+	 *            the index of the category
+	 */
+	private void reorder(int j) {
+		int position = rank[j];
+		double norm = norms[j];
+		while (position > 0 && norms[byNorm[position - 1]] < norm) {
+			byNorm[position] = byNorm[position - 1];
+			rank[byNorm[position]] = position;
+			position--;
+		}
+		while (position < size - 1 && norms[byNorm[position + 1]] > norm) {
+			byNorm[position] = byNorm[position + 1];
+			rank[byNorm[position]] = position;
+			position++;
+		}
+		byNorm[position] = j;
+		rank[j] = position;
+	}
+
+	/**
+	 * Rebuilds byNorm from scratch
+	 */
+	private void sortByNorm() {
+		Integer order[] = new Integer[size];
+		for (int j = 0; j < size; j++) {
+			order[j] = j;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(norms[b], norms[a]);
+			}
+		});
+		for (int k = 0; k < size; k++) {
+			byNorm[k] = order[k];
+			rank[order[k]] = k;
+		}
+	}
+
+	/**
+	 * Moves centroid j towards x, using Kohonen's learning rule with rate
+	 * 1 / size
+	 *
+	 * @param x
+	 *            the un-normalized input
+	 * @param j
+	 *            the index of the category
+	 * @param size
+	 *            the number of representants of the category, x included
+	 */
+	void learnCentroid(double[] x, int j, int size) {
+		int offset = j * inputDim;
+		if (singlePrecision) {
+			for (int i = 0; i < inputDim; i++) {
+				double c = centroidsf[offset + i];
+				centroidsf[offset + i] = (float) (1. / size * (x[i] - c) + c);
+			}
+		} else {
+			for (int i = 0; i < inputDim; i++) {
+				centroids[offset + i] = 1. / size * (x[i] - centroids[offset + i]) + centroids[offset + i];
+			}
+		}
+	}
+
+	/**
+	 * @param j
+	 *            the index of the category
+	 * @param i
+	 *            the position in the weight row
+	 * @return w[j][i]
+	 */
+	double weightAt(int j, int i) {
+		return singlePrecision ? wf[j * stride + i] : w[j * stride + i];
+	}
+
+	/**
+	 * @param j
+	 *            the index of the category
+	 * @return a copy of w[j]
+	 */
+	double[] getWeight(int j) {
+		double result[] = new double[stride];
+		copyWeight(j, result, 0);
+		return result;
+	}
+
+	/**
+	 * @param j
+	 *            the index of the category
+	 * @return a copy of the centroid of category j
+	 */
+	double[] getCentroid(int j) {
+		double result[] = new double[inputDim];
+		copyCentroid(j, result, 0);
+		return result;
+	}
+
+	private void copyWeight(int j, double[] dest, int destOffset) {
+		if (singlePrecision) {
+			for (int i = 0, offset = j * stride; i < stride; i++) {
+				dest[destOffset + i] = wf[offset + i];
+			}
+		} else {
+			System.arraycopy(w, j * stride, dest, destOffset, stride);
+		}
+	}
+
+	private void copyCentroid(int j, double[] dest, int destOffset) {
+		if (singlePrecision) {
+			for (int i = 0, offset = j * inputDim; i < inputDim; i++) {
+				dest[destOffset + i] = centroidsf[offset + i];
+			}
+		} else {
+			System.arraycopy(centroids, j * inputDim, dest, destOffset, inputDim);
+		}
+	}
+
+	private void setWeight(int j, double[] src, int srcOffset) {
+		if (singlePrecision) {
+			for (int i = 0, offset = j * stride; i < stride; i++) {
+				wf[offset + i] = (float) src[srcOffset + i];
+			}
+		} else {
+			System.arraycopy(src, srcOffset, w, j * stride, stride);
+		}
+	}
+
+	private void setCentroid(int j, double[] src, int srcOffset) {
+		if (singlePrecision) {
+			for (int i = 0, offset = j * inputDim; i < inputDim; i++) {
+				centroidsf[offset + i] = (float) src[srcOffset + i];
+			}
+		} else {
+			System.arraycopy(src, srcOffset, centroids, j * inputDim, inputDim);
+		}
+	}
+
+	/**
+	 * Recomputes the cached L1 norm of w[j]; to be called after w[j] was
+	 * changed
+	 *
+	 * @param j
+	 *            the index of the changed category
+	 */
+	void updateNorm(int j) {
+		if (singlePrecision) {
+			norms[j] = Kernels.sum(wf, j * stride, stride);
+		} else {
+			norms[j] = Kernels.sum(w, j * stride, stride);
+		}
+	}
+
+	/**
+	 * Starts recording the changes, so that they can be undone by rollback()
+	 */
+	void mark() {
+		marked = true;
+		markedSize = size;
+		journalLength = 0;
+	}
+
+	/**
+	 * Saves the current contents of row j in the journal, if a mark is set
+	 * and the row existed when the mark was set. Must be called before the row
+	 * is changed; saving a row more than once keeps only the first copy.
+	 *
+	 * @param j
+	 *            the index of the row about to be changed
+	 */
+	void beforeChange(int j) {
+		if (!marked || j >= markedSize) {
+			return;
+		}
+		for (int k = 0; k < journalLength; k++) {
+			if (journalRows[k] == j) {
+				return;
+			}
+		}
+		if (journalRows == null) {
+			journalRows = new int[1];
+			journalW = new double[stride];
+			journalCentroids = new double[inputDim];
+			journalSizes = new int[1];
+			journalNorms = new double[1];
+		} else if (journalLength == journalRows.length) {
+			int newLength = 2 * journalLength;
+			journalRows = Arrays.copyOf(journalRows, newLength);
+			journalW = Arrays.copyOf(journalW, newLength * stride);
+			journalCentroids = Arrays.copyOf(journalCentroids, newLength * inputDim);
+			journalSizes = Arrays.copyOf(journalSizes, newLength);
+			journalNorms = Arrays.copyOf(journalNorms, newLength);
+		}
+		journalRows[journalLength] = j;
+		copyWeight(j, journalW, journalLength * stride);
+		copyCentroid(j, journalCentroids, journalLength * inputDim);
+		journalSizes[journalLength] = category_size[j];
+		journalNorms[journalLength] = norms[j];
+		journalLength++;
+	}
+
+	/**
+	 * Undoes the changes made since mark(): restores the saved rows and drops
+	 * the categories added in the meantime
+	 */
+	void rollback() {
+		if (!marked) {
+			throw new IllegalStateException("rollback called without mark");
+		}
+		for (int k = journalLength - 1; k >= 0; k--) {
+			int j = journalRows[k];
+			setWeight(j, journalW, k * stride);
+			setCentroid(j, journalCentroids, k * inputDim);
+			category_size[j] = journalSizes[k];
+			norms[j] = journalNorms[k];
+		}
+		if (size != markedSize) {
+			// drop the added categories from byNorm
+			int position = 0;
+			for (int k = 0; k < size; k++) {
+				if (byNorm[k] < markedSize) {
+					byNorm[position] = byNorm[k];
+					rank[byNorm[position]] = position;
+					position++;
+				}
+			}
+			size = markedSize;
+		}
+		if (journalLength == 1) {
+			reorder(journalRows[0]);
+		} else if (journalLength > 1) {
+			sortByNorm();
+		}
+		commit();
+	}
+
+	/**
+	 * Keeps the changes made since mark() and stops recording
+	 */
+	void commit() {
+		marked = false;
+		journalLength = 0;
+	}
+
+	/**
+	 * @return the number of stored categories
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of categories that fit without growing
+	 */
+	int capacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the bytes allocated for the weights and the centroids,
+	 *         including the spare capacity; array headers are not counted
+	 */
+	long storageBytes() {
+		long bytes = 0;
+		bytes += w == null ? 0 : 8L * w.length;
+		bytes += wf == null ? 0 : 4L * wf.length;
+		bytes += centroids == null ? 0 : 8L * centroids.length;
+		bytes += centroidsf == null ? 0 : 4L * centroidsf.length;
+		return bytes;
+	}
+
+	/**
+	 * @return the length of a weight row
+	 */
+	int stride() {
+		return stride;
+	}
+
+	/**
+	 * @return the length of a centroid row
+	 */
+	int inputDim() {
+		return inputDim;
+	}
+
+	/**
+	 * @return true if weights and centroids are stored as float
+	 */
+	boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	/**
+	 * Deep copy of this
+	 */
+	public CategoryStore clone() {
+		return copy(this.capacity);
+	}
+
+	/**
+	 * Deep copy of this, without the unused capacity
+	 *
+	 * @return a copy whose capacity equals its size
+	 */
+	CategoryStore trimmedCopy() {
+		return copy(Math.max(this.size, 1));
+	}
+
+	private CategoryStore copy(int newCapacity) {
+		CategoryStore result = new CategoryStore(newCapacity, this.singlePrecision);
+		result.inputDim = this.inputDim;
+		result.stride = this.stride;
+		result.size = this.size;
+		if (this.category_size != null) {
+			if (singlePrecision) {
+				result.wf = Arrays.copyOf(this.wf, newCapacity * stride);
+				result.centroidsf = Arrays.copyOf(this.centroidsf, newCapacity * inputDim);
+			} else {
+				result.w = Arrays.copyOf(this.w, newCapacity * stride);
+				result.centroids = Arrays.copyOf(this.centroids, newCapacity * inputDim);
+			}
+			result.category_size = Arrays.copyOf(this.category_size, newCapacity);
+			result.norms = Arrays.copyOf(this.norms, newCapacity);
+			result.byNorm = Arrays.copyOf(this.byNorm, newCapacity);
+			result.rank = Arrays.copyOf(this.rank, newCapacity);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,106 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+
+/**
+ * Scoring shared by the read-only classifiers, FAMRSnapshot, MappedModel and
+ * FAMREnsemble. A subclass provides the conditional probabilities of the
+ * classes for a scaled input; the label is the class with the maximum one,
+ * and the patterns are scaled with the iMin and iMax of the model.
+ */
+abstract class Classifier {
+
+	/**
+	 * @return the minimum input value, used for scaling
+	 */
+	public abstract double getIMin();
+
+	/**
+	 * @return the maximum input value, used for scaling
+	 */
+	public abstract double getIMax();
+
+	/**
+	 * @return the number of classes
+	 */
+	public abstract int getOutputDim();
+
+	/**
+	 * Return the conditional probabilities P( output class | input ) for all
+	 * output classes.
+	 *
+	 * @param scaledInput
+	 *            the input, scaled in [0, 1]
+	 * @return a vector of conditional probabilities
+	 */
+	public abstract double[] getProbVector(double[] scaledInput);
+
+	/**
+	 * Return the index of the class assigned to scaledInput, the class with
+	 * maximum estimated conditional probability; ties go to the lowest index
+	 *
+	 * @param scaledInput
+	 *            the input to be classified, scaled in [0, 1]
+	 * @return the inferred label; -1 if the model has no category
+	 */
+	public int classifyInputVector(double[] scaledInput) {
+		return argmax(getProbVector(scaledInput));
+	}
+
+	/**
+	 * Classifies the current pattern
+	 *
+	 * @param toBeClassified
+	 *            reference to the pattern to be classified
+	 * @return the estimated label; -1 if the model has no category
+	 */
+	public int classifySingleInstance(Pattern toBeClassified) {
+		toBeClassified.scaleInput(getIMin(), getIMax());
+		return classifyInputVector(toBeClassified.getScaledInput());
+	}
+
+	/**
+	 * Tells whether the current pattern is correctly classified
+	 *
+	 * @param pattern
+	 *            the input to be classified
+	 * @return true if the pattern is correctly classified, false otherwise
+	 */
+	public boolean correctlyClassifiesPattern(Pattern pattern) {
+		return pattern.getClassIndex() == classifySingleInstance(pattern);
+	}
+
+	/**
+	 * Computes the accuracy for the given set
+	 *
+	 * @param patterns
+	 *            the test set
+	 * @return percentage of correctly classified patterns
+	 */
+	public double computeAccuracy(List<Pattern> patterns) {
+		int correctlyClassified = 0;
+		for (Pattern pattern : patterns) {
+			if (correctlyClassifiesPattern(pattern)) {
+				++correctlyClassified;
+			}
+		}
+		return (double) correctlyClassified / patterns.size();
+	}
+
+	/**
+	 * @param p
+	 *            the probabilities of the classes
+	 * @return the index of the first maximum of p; -1 if p is empty
+	 */
+	static int argmax(double[] p) {
+		int index = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int k = 0; k < p.length; k++) {
+			if (max < p[k]) {
+				max = p[k];
+				index = k;
+			}
+		}
+		return index;
+	}
+}
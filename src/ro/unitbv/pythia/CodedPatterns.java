@@ -0,0 +1,55 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+
+/**
+ * A training set scaled and complement coded once, to be shared, read-only,
+ * by several networks trained in parallel. Row t holds the coded input of
+ * pattern t, its norm (computed as FuzzyArt.newInput does), its label and its
+ * relevance.
+ */
+final class CodedPatterns {
+
+	final double coded[][];
+	final double norms[];
+	final int classes[];
+	final double weights[];
+
+	/**
+	 * @param patterns
+	 *            the training set; the inputs are scaled in place
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum input value
+	 */
+	CodedPatterns(List<Pattern> patterns, double iMin, double iMax) {
+		int n = patterns.size();
+		coded = new double[n][];
+		norms = new double[n];
+		classes = new int[n];
+		weights = new double[n];
+		int t = 0;
+		for (Pattern pattern : patterns) {
+			pattern.scaleInput(iMin, iMax);
+			double scaledInput[] = pattern.getScaledInput();
+			int dim = scaledInput.length;
+			if (t > 0 && dim != coded[0].length / 2) {
+				throw new RuntimeException("Size mismatch: expected input of length " + coded[0].length / 2
+						+ ", got " + dim);
+			}
+			coded[t] = new double[2 * dim];
+			norms[t] = Util.complementCode(scaledInput, coded[t]);
+			classes[t] = pattern.getClassIndex();
+			weights[t] = pattern.getWeight();
+			t++;
+		}
+	}
+
+	/**
+	 * @return the number of patterns
+	 */
+	int size() {
+		return coded.length;
+	}
+}
@@ -0,0 +1,472 @@
+package ro.unitbv.pythia;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Training set stored on disk in columns, memory-mapped read-only. The inputs
+ * are stored already scaled to [0, 1], row after row, followed by the
+ * outputs (class indices, or continuous outputs for regression) and the
+ * relevance factors q_t. A training epoch reads the three columns
+ * sequentially from the page cache, without any Pattern object.
+ *
+ * Layout, version 1, little-endian:
+ * <pre>
+ * offset  type       content
+ *  0      int        magic, the bytes 'F' 'A' 'M' 'D'
+ *  4      int        version
+ *  8      int        flags; bit 0: continuous outputs (regression)
+ * 12      int        inputDim
+ * 16      long       number of patterns
+ * 24      double     iMin used for scaling
+ * 32      double     iMax used for scaling
+ * 40      long[3]    reserved, 0
+ * 64      double     scaled inputs, numPatterns * inputDim values
+ *         int/double class indices / continuous outputs, numPatterns values
+ *         double     q_t, numPatterns values
+ * </pre>
+ * Each column is padded to a multiple of 8 bytes. The columns are mapped in
+ * chunks of rows, so a dataset may be larger than 2 GB.
+ */
+public final class ColumnarDataset {
+
+	static final int MAGIC = 'F' | 'A' << 8 | 'M' << 16 | 'D' << 24;
+	static final int VERSION = 1;
+	static final int FLAG_REGRESSION = 1;
+	private static final int HEADER_BYTES = 64;
+	private static final int BUFFER_BYTES = 1 << 16;
+	// largest mapping of one column chunk
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+	private final int inputDim;
+	private final long size;
+	private final double iMin;
+	private final double iMax;
+	private final boolean regression;
+	private final int chunkRows; // rows per mapped chunk
+	// column views of each chunk; one of classes / outputs is used
+	private final DoubleBuffer inputs[];
+	private final IntBuffer classes[];
+	private final DoubleBuffer outputs[];
+	private final DoubleBuffer weights[];
+
+	private ColumnarDataset(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_BYTES) {
+				throw new IOException(file + " is not a dataset file");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a dataset file");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Unsupported dataset file version " + header.getInt(4) + " in " + file);
+			}
+			this.regression = (header.getInt(8) & FLAG_REGRESSION) != 0;
+			this.inputDim = header.getInt(12);
+			this.size = header.getLong(16);
+			this.iMin = header.getDouble(24);
+			this.iMax = header.getDouble(32);
+			if (inputDim <= 0 || size < 0) {
+				throw new IOException("Corrupt dataset file " + file);
+			}
+
+			long inputsOffset = HEADER_BYTES;
+			long outputsOffset = inputsOffset + size * inputDim * 8;
+			int outputBytes = regression ? 8 : 4;
+			long weightsOffset = outputsOffset + padded(size * outputBytes);
+			if (weightsOffset + size * 8 != channel.size()) {
+				throw new IOException("Truncated or corrupt dataset file " + file);
+			}
+
+			this.chunkRows = (int) Math.max(1, MAX_CHUNK_BYTES / (8L * inputDim));
+			int chunks = (int) ((size + chunkRows - 1) / chunkRows);
+			this.inputs = new DoubleBuffer[chunks];
+			this.classes = regression ? null : new IntBuffer[chunks];
+			this.outputs = regression ? new DoubleBuffer[chunks] : null;
+			this.weights = new DoubleBuffer[chunks];
+			for (int c = 0; c < chunks; c++) {
+				long first = (long) c * chunkRows;
+				long rows = Math.min(chunkRows, size - first);
+				inputs[c] = map(channel, inputsOffset + first * inputDim * 8, rows * inputDim * 8).asDoubleBuffer();
+				ByteBuffer output = map(channel, outputsOffset + first * outputBytes, rows * outputBytes);
+				if (regression) {
+					outputs[c] = output.asDoubleBuffer();
+				} else {
+					classes[c] = output.asIntBuffer();
+				}
+				weights[c] = map(channel, weightsOffset + first * 8, rows * 8).asDoubleBuffer();
+			}
+		}
+	}
+
+	/**
+	 * Maps a dataset file, read-only
+	 *
+	 * @param file
+	 *            a file written by write
+	 * @return the dataset
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a valid dataset file
+	 */
+	public static ColumnarDataset map(File file) throws IOException {
+		return new ColumnarDataset(file);
+	}
+
+	/**
+	 * Writes patterns to file, with their inputs scaled to [0, 1] as by
+	 * Pattern.scaleInput(iMin, iMax). The patterns are not changed.
+	 *
+	 * @param patterns
+	 *            the patterns, all with the same input dimension; all for
+	 *            classification, or all for regression
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum input value
+	 * @param file
+	 *            the destination
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(List<Pattern> patterns, double iMin, double iMax, File file) throws IOException {
+		if (patterns.isEmpty()) {
+			throw new IllegalArgumentException("No patterns to write");
+		}
+		boolean regression = !patterns.get(0).isClassificationInstance();
+		int inputDim = patterns.get(0).getInputDimension();
+		try (Writer writer = new Writer(file, inputDim, patterns.size(), iMin, iMax, regression)) {
+			for (Pattern pattern : patterns) {
+				if (pattern.isClassificationInstance() == regression) {
+					throw new IllegalArgumentException("Classification and regression patterns are mixed");
+				}
+				writer.add(pattern.getInput(), pattern.getClassIndex(), pattern.getContinuousOutput(),
+						pattern.getWeight());
+			}
+		}
+	}
+
+	/**
+	 * Writes the classification patterns of source to file, with their inputs
+	 * scaled to [0, 1] as by Pattern.scaleInput(iMin, iMax). The source is
+	 * read twice: once to count the patterns, once to write them.
+	 *
+	 * @param source
+	 *            the patterns, for instance a CsvPatternSource
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum input value
+	 * @param file
+	 *            the destination
+	 * @throws IOException
+	 *             if the source cannot be read or the file cannot be written
+	 */
+	public static void write(PatternSource source, double iMin, double iMax, File file) throws IOException {
+		long count = 0;
+		int inputDim = -1;
+		try (PatternStream stream = source.open()) {
+			while (stream.next()) {
+				inputDim = stream.input().length;
+				count++;
+			}
+		}
+		if (count == 0) {
+			throw new IllegalArgumentException("No patterns to write");
+		}
+		try (Writer writer = new Writer(file, inputDim, count, iMin, iMax, false);
+				PatternStream stream = source.open()) {
+			while (stream.next()) {
+				writer.add(stream.input(), stream.classIndex(), Double.NaN, stream.weight());
+			}
+		}
+	}
+
+	/**
+	 * Writes the three columns at their own positions, through one buffer
+	 * each
+	 */
+	private static final class Writer implements AutoCloseable {
+
+		private final FileChannel channel;
+		private final int inputDim;
+		private final long count;
+		private final double iMin;
+		private final double iMax;
+		private final double scaledInput[];
+		private final boolean regression;
+		private final ByteBuffer inputBuffer = newBuffer();
+		private final ByteBuffer outputBuffer = newBuffer();
+		private final ByteBuffer weightBuffer = newBuffer();
+		private long inputPosition;
+		private long outputPosition;
+		private long weightPosition;
+		private long written = 0;
+
+		Writer(File file, int inputDim, long count, double iMin, double iMax, boolean regression)
+				throws IOException {
+			if (iMax <= iMin) {
+				throw new RuntimeException("iMin should be less than iMax, they are (" + iMin + ", " + iMax + ")");
+			}
+			this.inputDim = inputDim;
+			this.count = count;
+			this.iMin = iMin;
+			this.iMax = iMax;
+			this.scaledInput = new double[inputDim];
+			this.regression = regression;
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(regression ? FLAG_REGRESSION : 0);
+			header.putInt(inputDim);
+			header.putLong(count);
+			header.putDouble(iMin);
+			header.putDouble(iMax);
+			((Buffer) header).clear();
+			write(header, 0);
+			inputPosition = HEADER_BYTES;
+			outputPosition = inputPosition + count * inputDim * 8;
+			weightPosition = outputPosition + padded(count * (regression ? 8 : 4));
+		}
+
+		void add(double[] input, int classIndex, double continuousOutput, double weight) throws IOException {
+			if (input.length != inputDim) {
+				throw new RuntimeException("Size mismatch: expected input of length " + inputDim + ", got "
+						+ input.length);
+			}
+			if (written == count) {
+				throw new IllegalStateException("More patterns than announced");
+			}
+			Util.scaleInput(input, iMin, iMax, scaledInput);
+			for (double value : scaledInput) {
+				if (!inputBuffer.hasRemaining()) {
+					inputPosition = flush(inputBuffer, inputPosition);
+				}
+				inputBuffer.putDouble(value);
+			}
+			if (outputBuffer.remaining() < 8) {
+				outputPosition = flush(outputBuffer, outputPosition);
+			}
+			if (regression) {
+				outputBuffer.putDouble(continuousOutput);
+			} else {
+				outputBuffer.putInt(classIndex);
+			}
+			if (!weightBuffer.hasRemaining()) {
+				weightPosition = flush(weightBuffer, weightPosition);
+			}
+			weightBuffer.putDouble(weight);
+			written++;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (written != count) {
+					throw new IllegalStateException("Fewer patterns than announced");
+				}
+				flush(inputBuffer, inputPosition);
+				if (!regression && count % 2 == 1) {
+					outputBuffer.putInt(0); // padding
+				}
+				flush(outputBuffer, outputPosition);
+				flush(weightBuffer, weightPosition);
+			} finally {
+				channel.close();
+			}
+		}
+
+		private long flush(ByteBuffer buffer, long position) throws IOException {
+			((Buffer) buffer).flip(); // Buffer methods, for Java 8 binaries
+			position = write(buffer, position);
+			((Buffer) buffer).clear();
+			return position;
+		}
+
+		private long write(ByteBuffer buffer, long position) throws IOException {
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			return position;
+		}
+
+		private static ByteBuffer newBuffer() {
+			return ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	/**
+	 * Sequential reader over the rows; it keeps its own views of the columns,
+	 * so several cursors can read the same dataset at once
+	 */
+	final class Cursor {
+
+		private final double input[] = new double[inputDim];
+		private long row = -1;
+		private int chunk = -1;
+		private DoubleBuffer chunkInputs;
+		private int offset; // row within the chunk
+
+		/**
+		 * Moves to the next row
+		 *
+		 * @return false if there are no more rows
+		 */
+		boolean next() {
+			row++;
+			if (row >= size) {
+				return false;
+			}
+			offset++;
+			if (chunk == -1 || offset == chunkRows) {
+				chunk++;
+				offset = 0;
+				chunkInputs = inputs[chunk].duplicate();
+			}
+			chunkInputs.get(input, 0, inputDim);
+			return true;
+		}
+
+		/**
+		 * @return the scaled input of the current row; the array is reused
+		 */
+		double[] scaledInput() {
+			return input;
+		}
+
+		/**
+		 * @return the class index of the current row
+		 */
+		int classIndex() {
+			return classes[chunk].get(offset);
+		}
+
+		/**
+		 * @return the relevance q_t of the current row
+		 */
+		double weight() {
+			return weights[chunk].get(offset);
+		}
+	}
+
+	/**
+	 * @return a cursor positioned before the first row
+	 */
+	Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * @param i
+	 *            the index of a pattern
+	 * @return a copy of its scaled input
+	 */
+	public double[] getScaledInput(long i) {
+		checkIndex(i);
+		double result[] = new double[inputDim];
+		DoubleBuffer view = inputs[(int) (i / chunkRows)];
+		int base = (int) (i % chunkRows) * inputDim;
+		for (int k = 0; k < inputDim; k++) {
+			result[k] = view.get(base + k);
+		}
+		return result;
+	}
+
+	/**
+	 * @param i
+	 *            the index of a pattern
+	 * @return its class index
+	 */
+	public int getClassIndex(long i) {
+		checkIndex(i);
+		if (regression) {
+			throw new IllegalStateException("The dataset is for regression");
+		}
+		return classes[(int) (i / chunkRows)].get((int) (i % chunkRows));
+	}
+
+	/**
+	 * @param i
+	 *            the index of a pattern
+	 * @return its continuous output
+	 */
+	public double getContinuousOutput(long i) {
+		checkIndex(i);
+		if (!regression) {
+			throw new IllegalStateException("The dataset is for classification");
+		}
+		return outputs[(int) (i / chunkRows)].get((int) (i % chunkRows));
+	}
+
+	/**
+	 * @param i
+	 *            the index of a pattern
+	 * @return its relevance q_t
+	 */
+	public double getWeight(long i) {
+		checkIndex(i);
+		return weights[(int) (i / chunkRows)].get((int) (i % chunkRows));
+	}
+
+	private void checkIndex(long i) {
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("No pattern with index " + i);
+		}
+	}
+
+	/**
+	 * @return the number of patterns
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * @return the length of an input
+	 */
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	/**
+	 * @return the minimum input value used for scaling
+	 */
+	public double getIMin() {
+		return iMin;
+	}
+
+	/**
+	 * @return the maximum input value used for scaling
+	 */
+	public double getIMax() {
+		return iMax;
+	}
+
+	/**
+	 * @return true if the outputs are continuous, false if they are class
+	 *         indices
+	 */
+	public boolean isRegression() {
+		return regression;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long offset, long bytes) throws IOException {
+		ByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+		return result.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long padded(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+}
@@ -0,0 +1,98 @@
+package ro.unitbv.pythia;
+
+/**
+ * k-fold cross-validation scores of one configuration, computed by
+ * HyperparameterSearch
+ */
+public final class CrossValidationResult {
+
+	private final Hyperparameters hyperparameters;
+	private final double foldAccuracies[];
+	private final int foldCategories[];
+	private final long foldNanos[];
+
+	CrossValidationResult(Hyperparameters hyperparameters, int folds) {
+		this.hyperparameters = hyperparameters;
+		this.foldAccuracies = new double[folds];
+		this.foldCategories = new int[folds];
+		this.foldNanos = new long[folds];
+	}
+
+	/**
+	 * Records the scores of one fold; each fold is set by one task
+	 */
+	void set(int fold, double accuracy, int categories, long nanos) {
+		foldAccuracies[fold] = accuracy;
+		foldCategories[fold] = categories;
+		foldNanos[fold] = nanos;
+	}
+
+	/**
+	 * @return the evaluated configuration
+	 */
+	public Hyperparameters getHyperparameters() {
+		return hyperparameters;
+	}
+
+	/**
+	 * @return the mean accuracy over the folds
+	 */
+	public double getAccuracy() {
+		double sum = 0;
+		for (double accuracy : foldAccuracies) {
+			sum += accuracy;
+		}
+		return sum / foldAccuracies.length;
+	}
+
+	/**
+	 * @return the mean number of input categories over the folds
+	 */
+	public double getCategories() {
+		double sum = 0;
+		for (int categories : foldCategories) {
+			sum += categories;
+		}
+		return sum / foldCategories.length;
+	}
+
+	/**
+	 * @return the training and test time of all folds, in nanoseconds
+	 */
+	public long getNanos() {
+		long sum = 0;
+		for (long nanos : foldNanos) {
+			sum += nanos;
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the accuracy on each held-out fold
+	 */
+	public double[] getFoldAccuracies() {
+		return foldAccuracies.clone();
+	}
+
+	/**
+	 * @return the number of input categories trained for each fold
+	 */
+	public int[] getFoldCategories() {
+		return foldCategories.clone();
+	}
+
+	/**
+	 * @return the training and test time of each fold, in nanoseconds
+	 */
+	public long[] getFoldNanos() {
+		return foldNanos.clone();
+	}
+
+	/**
+	 * Human readable result
+	 */
+	public String toString() {
+		return hyperparameters + ": accuracy= " + getAccuracy() + "; categories= " + getCategories() + "; ms= "
+				+ getNanos() / 1000000;
+	}
+}
@@ -0,0 +1,129 @@
+package ro.unitbv.pythia;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Patterns read from a text file, one per line:
+ * <pre>
+ * x_1,x_2,...,x_n,classIndex[,q_t]
+ * </pre>
+ * The inputs are not scaled; q_t defaults to 1. Empty lines are skipped. The
+ * file is read again, line by line, for each pass.
+ */
+public final class CsvPatternSource implements PatternSource {
+
+	private final File file;
+	private final int inputDim;
+
+	/**
+	 * @param file
+	 *            the text file
+	 * @param inputDim
+	 *            the number of input values on each line
+	 */
+	public CsvPatternSource(File file, int inputDim) {
+		if (inputDim <= 0) {
+			throw new IllegalArgumentException("The input dimension should be positive");
+		}
+		this.file = file;
+		this.inputDim = inputDim;
+	}
+
+	@Override
+	public PatternStream open() throws IOException {
+		return new Stream(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8));
+	}
+
+	private final class Stream implements PatternStream {
+
+		private final BufferedReader reader;
+		private final double input[] = new double[inputDim];
+		private int classIndex;
+		private double weight;
+		private int lineNo = 0;
+
+		Stream(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public boolean next() throws IOException {
+			String line;
+			do {
+				line = reader.readLine();
+				lineNo++;
+				if (line == null) {
+					return false;
+				}
+			} while (line.trim().isEmpty());
+			parse(line);
+			return true;
+		}
+
+		/**
+		 * Splits line on commas, without building an array of fields
+		 */
+		private void parse(String line) throws IOException {
+			int field = 0;
+			int start = 0;
+			weight = 1.0;
+			while (start <= line.length()) {
+				int end = line.indexOf(',', start);
+				if (end == -1) {
+					end = line.length();
+				}
+				if (field > inputDim + 1) {
+					throw error("too many values");
+				}
+				String value = line.substring(start, end).trim();
+				try {
+					if (field < inputDim) {
+						input[field] = Double.parseDouble(value);
+					} else if (field == inputDim) {
+						classIndex = Integer.parseInt(value);
+					} else {
+						weight = Double.parseDouble(value);
+					}
+				} catch (NumberFormatException e) {
+					throw error("'" + value + "' is not a number");
+				}
+				field++;
+				start = end + 1;
+			}
+			if (field < inputDim + 1) {
+				throw error("expected " + inputDim + " inputs and a class index");
+			}
+			if (!(weight > 0)) {
+				throw error("the relevance should be strictly greater than 0");
+			}
+		}
+
+		private IOException error(String message) {
+			return new IOException(file + ", line " + lineNo + ": " + message);
+		}
+
+		@Override
+		public double[] input() {
+			return input;
+		}
+
+		@Override
+		public int classIndex() {
+			return classIndex;
+		}
+
+		@Override
+		public double weight() {
+			return weight;
+		}
+
+		@Override
+		public void close() throws IOException {
+			reader.close();
+		}
+	}
+}
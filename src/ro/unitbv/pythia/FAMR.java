@@ -1,8 +1,12 @@
 package ro.unitbv.pythia;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Title:        Modified Fuzzy Artmap
@@ -33,6 +37,10 @@ public class FAMR implements Serializable {
 	private double iMin;
 	private double iMax;
 	private int outputDim;
+	private boolean cloneRollback = false;
+	private transient FAMRMetrics metrics = null; // null when the events are not measured
+	private transient int matchTrackingIterations = 0; // of the last training pair
+	private transient FAMRSnapshot snapshot = null; // returned by freeze until the next change
 
 	/**
 	 * 
@@ -59,6 +67,32 @@ public class FAMR implements Serializable {
 			double iMax, //max input, for scaling in [0, 1]
 			int outputDim //how many classes; the classes must be 0..outputDim-1
 			) {
+		this(rho_init_a, beta_a, rho_ab, epochs, iMin, iMax, outputDim, false);
+	}
+
+	/**
+	 * 
+	 * @param rho_init_a
+	 *            baseline vigilance parameter
+	 * @param beta_a
+	 *            used for category learning
+	 * @param rho_ab
+	 *            mapfield threshold
+	 * @param epochs
+	 *            how many iterations over the training set
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum output value
+	 * @param outputDim
+	 *            maximum number of classes
+	 * @param singlePrecision
+	 *            true to store category weights, centroids and mapfield
+	 *            probabilities as float, halving the model size; the
+	 *            computations are still done in double
+	 */
+	public FAMR(double rho_init_a, double beta_a, double rho_ab, int epochs, double iMin, double iMax,
+			int outputDim, boolean singlePrecision) {
 
 		this.rho_init_a = rho_init_a;
 		this.beta_a = beta_a;
@@ -68,9 +102,9 @@ public class FAMR implements Serializable {
 		this.iMax = iMax;
 		this.outputDim = outputDim;
 
-		art_a = new FuzzyArt(this.rho_init_a, this.beta_a);
+		art_a = new FuzzyArt(this.rho_init_a, this.beta_a, 0, singlePrecision);
 		art_b_classification = new FuzzyVector(this.outputDim);
-		mapField = new MapField(this.rho_ab, this.outputDim);
+		mapField = new MapField(this.rho_ab, this.outputDim, singlePrecision);
 	}
 
 	/**
@@ -100,24 +134,365 @@ public class FAMR implements Serializable {
 				int classLabel = pattern.getClassIndex();
 				double q_t = pattern.getWeight();
 
-				if (!trainPair(scaledInput, classLabel, q_t)) {
+				if (trainPair(scaledInput, classLabel, q_t) == -1) {
+					n_rejected_pairs++;
+				}
+				if (i == 0) {
+					n_pairs++;
+				}
+			}
+		}
+		endTraining(n_pairs, n_rejected_pairs);
+	}
+
+	/**
+	 * Performs FAMR training on patterns streamed from source, which is read
+	 * once per epoch. The inputs are scaled one at a time into a reused
+	 * buffer, so the heap use does not depend on the size of the training set.
+	 * The result is the same as train(List) on the same patterns.
+	 * 
+	 * @param source
+	 *            the training dataset
+	 * @throws IOException
+	 *             if the source cannot be read
+	 */
+	public void train(PatternSource source) throws IOException {
+		int n_pairs = 0;
+		int n_rejected_pairs = 0;
+
+		Logger.println("Start training the classifier from a stream");
+
+		Logger.println("this.iMin= " + this.iMin + "; this.iMax= " + this.iMax);
+
+		double scaledInput[] = null;
+		for (int i = 0; i < epochs; i++) {
+			try (PatternStream stream = source.open()) {
+				while (stream.next()) {
+					double input[] = stream.input();
+					if (scaledInput == null || scaledInput.length != input.length) {
+						scaledInput = new double[input.length];
+					}
+					Util.scaleInput(input, this.iMin, this.iMax, scaledInput);
+
+					if (trainPair(scaledInput, stream.classIndex(), stream.weight()) == -1) {
+						n_rejected_pairs++;
+					}
+					if (i == 0) {
+						n_pairs++;
+					}
+				}
+			}
+		}
+		endTraining(n_pairs, n_rejected_pairs);
+	}
+
+	/**
+	 * Performs FAMR training on a memory-mapped dataset, read sequentially
+	 * once per epoch. The dataset must have been scaled with the iMin and
+	 * iMax of this network; the result is the same as train(List) on the same
+	 * patterns.
+	 * 
+	 * @param dataset
+	 *            the training dataset, for classification
+	 */
+	public void train(ColumnarDataset dataset) {
+		if (dataset.isRegression()) {
+			throw new IllegalArgumentException("The dataset is for regression");
+		}
+		if (dataset.getIMin() != this.iMin || dataset.getIMax() != this.iMax) {
+			throw new IllegalArgumentException("The dataset is scaled to (" + dataset.getIMin() + ", "
+					+ dataset.getIMax() + "), the network expects (" + this.iMin + ", " + this.iMax + ")");
+		}
+		if (dataset.size() > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("The dataset has " + dataset.size()
+					+ " patterns, more than the pair counters can hold");
+		}
+		int n_pairs = 0;
+		int n_rejected_pairs = 0;
+
+		Logger.println("Start training the classifier from a mapped dataset");
+
+		for (int i = 0; i < epochs; i++) {
+			ColumnarDataset.Cursor cursor = dataset.cursor();
+			while (cursor.next()) {
+				if (trainPair(cursor.scaledInput(), cursor.classIndex(), cursor.weight()) == -1) {
 					n_rejected_pairs++;
 				}
 				if (i == 0) {
 					n_pairs++;
-					global_n_pairs++;
 				}
 			}
 		}
-		Logger.println("End of " + epochs + " epochs of trainig. " + "We have obtained " + art_a.numCategories()
-				+ " input categories and " + art_b_classification.length + " output categories\n" + "using " + n_pairs
-				+ " training pairs\n" + "Number of rejected pairs is " + n_rejected_pairs + "\n"
+		endTraining(n_pairs, n_rejected_pairs);
+	}
+
+	/**
+	 * Counts the training pairs and logs the end of the epochs, for the
+	 * train methods
+	 * 
+	 * @param n_pairs
+	 *            the number of training pairs
+	 * @param n_rejected_pairs
+	 *            the number of rejections, over all epochs
+	 */
+	private void endTraining(int n_pairs, int n_rejected_pairs) {
+		global_n_pairs += n_pairs;
+		Logger.println("End of " + epochs + " epochs of training. " + "We have obtained " + art_a.numCategories()
+				+ " input categories and " + art_b_classification.length + " output categories\n" + "using "
+				+ n_pairs + " training pairs\n" + "Number of rejected pairs is " + n_rejected_pairs + "\n"
+				+ "Historical number of processed pairs: " + global_n_pairs + "\n");
+	}
+
+	/**
+	 * Performs FAMR training on complement-coded inputs shared with other
+	 * networks, presented in the given order in every epoch
+	 * 
+	 * @param patterns
+	 *            the coded training set
+	 * @param order
+	 *            the presentation order, indexes in patterns
+	 * @return the number of rejected pairs in the last epoch
+	 */
+	int trainCoded(CodedPatterns patterns, int[] order) {
+		int n_rejected_pairs = 0;
+		for (int i = 0; i < epochs; i++) {
+			n_rejected_pairs = 0;
+			for (int t : order) {
+				if (trainCodedPair(patterns.coded[t], patterns.norms[t], patterns.classes[t],
+						patterns.weights[t]) == -1) {
+					n_rejected_pairs++;
+				}
+			}
+		}
+		global_n_pairs += order.length;
+		return n_rejected_pairs;
+	}
+
+	/**
+	 * Performs data-parallel FAMR training on the common fork-join pool, see
+	 * trainSharded(List, int, ForkJoinPool)
+	 * 
+	 * @param patterns
+	 *            the training dataset; the inputs are scaled in place
+	 * @param shards
+	 *            the number of shards
+	 * @return the number of shard categories merged into categories of other
+	 *         shards
+	 */
+	public int trainSharded(List<Pattern> patterns, int shards) {
+		return trainSharded(patterns, shards, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Performs data-parallel FAMR training. The patterns are split in shards
+	 * of consecutive patterns; each shard trains its own network, with the
+	 * hyperparameters of this one, as a task of pool. The shard networks are
+	 * then merged into this network, in shard order, see mergeShard. The
+	 * result is usually close to, but not the same as, train(List).
+	 * 
+	 * @param patterns
+	 *            the training dataset; the inputs are scaled in place
+	 * @param shards
+	 *            the number of shards
+	 * @param pool
+	 *            the pool running the shard training tasks
+	 * @return the number of shard categories merged into categories of other
+	 *         shards
+	 */
+	public int trainSharded(List<Pattern> patterns, int shards, ForkJoinPool pool) {
+		if (shards < 1) {
+			throw new IllegalArgumentException("The number of shards should be at least 1");
+		}
+		if (mapField.getLinesNo() > 0) {
+			throw new IllegalStateException("Sharded training needs an untrained network");
+		}
+		final CodedPatterns coded = new CodedPatterns(patterns, this.iMin, this.iMax);
+		int n = coded.size();
+
+		Logger.println("Start training the classifier on " + shards + " shards");
+
+		FAMR models[] = new FAMR[shards];
+		final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(shards);
+		for (int s = 0; s < shards; s++) {
+			int from = (int) ((long) n * s / shards);
+			int to = (int) ((long) n * (s + 1) / shards);
+			final int order[] = new int[to - from];
+			for (int t = from; t < to; t++) {
+				order[t - from] = t;
+			}
+			final FAMR model = newUntrained(isSinglePrecision());
+			models[s] = model;
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					model.trainCoded(coded, order);
+				}
+			});
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		int merged = 0;
+		for (FAMR model : models) {
+			merged += mergeShard(model);
+		}
+		global_n_pairs += n;
+		Logger.println("End of sharded training. " + "We have obtained " + art_a.numCategories()
+				+ " input categories from " + shards + " shards, " + merged + " shard categories were merged\n"
 				+ "Historical number of processed pairs: " + global_n_pairs + "\n");
+		return merged;
+	}
+
+	/**
+	 * @param singlePrecision
+	 *            true to store the weights and probabilities as float
+	 * @return an untrained network with the hyperparameters and settings of
+	 *         this one: sparse mapfield, clone rollback, pruning and spatial
+	 *         index
+	 */
+	FAMR newUntrained(boolean singlePrecision) {
+		FAMR result = new FAMR(rho_init_a, beta_a, rho_ab, epochs, iMin, iMax, outputDim, singlePrecision);
+		result.setSparseMapField(isSparseMapField());
+		result.setCloneRollback(cloneRollback);
+		result.art_a.setPruning(art_a.isPruning());
+		result.art_a.setSpatialIndex(art_a.isSpatialIndex());
+		return result;
+	}
+
+	/**
+	 * Merges the categories of a network trained on other data into this
+	 * network. Category c of the shard is merged into the closest category J
+	 * of this network (the largest |w[J] and w[c]|), among those which
+	 * existed before the merge, if:
+	 * - the boxes of J and c overlap;
+	 * - the merged box passes the baseline vigilance test, as any input
+	 *   inside it does: |w[J] and w[c]| &gt;= rho_init_a * M, for M inputs;
+	 * - the fused mapfield row passes the mapfield test for the most probable
+	 *   class of c.
+	 * The merged weight is w[J] and w[c], and the mapfield rows are fused
+	 * weighted by their relevance mass Q_t. Otherwise c is added as a new
+	 * category. The categories are compared pairwise, in O(C^2 * M) for C
+	 * categories.
+	 * 
+	 * @param shard
+	 *            a network with the same hyperparameters
+	 * @return the number of categories of shard which were merged
+	 */
+	private int mergeShard(FAMR shard) {
+		snapshot = null;
+		CategoryStore source = shard.art_a.getCategories();
+		CategoryStore target = art_a.getCategories();
+		int candidates = target.size();
+		int merged = 0;
+		for (int c = 0; c < source.size(); c++) {
+			int J = closestMergeable(source, c, shard.mapField, candidates);
+			if (J == -1) {
+				art_a.addCategory(source, c);
+				mapField.addRow(shard.mapField, c);
+			} else {
+				art_a.mergeCategory(J, source, c);
+				mapField.fuse(J, shard.mapField, c);
+				merged++;
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the category of this network, among the first candidates, into
+	 *         which category c of source can be merged; -1 if there is none
+	 */
+	private int closestMergeable(CategoryStore source, int c, MapField sourceMap, int candidates) {
+		CategoryStore target = art_a.getCategories();
+		int dim = source.inputDim();
+		double threshold = rho_init_a * dim;
+		int K = sourceMap.posMax(c);
+		double q = sourceMap.getQ_t(c);
+		double p = sourceMap.getw_ab(c, K);
+		int best = -1;
+		double bestMatch = -1;
+		for (int J = 0; J < candidates; J++) {
+			double match = 0;
+			boolean overlap = true;
+			for (int i = 0; i < dim; i++) {
+				double u = target.weightAt(J, i);
+				double v = source.weightAt(c, i);
+				double uc = target.weightAt(J, dim + i);
+				double vc = source.weightAt(c, dim + i);
+				if (Math.max(u, v) + Math.max(uc, vc) > 1) {
+					overlap = false; // the boxes are disjoint along input i
+					break;
+				}
+				match += Math.min(u, v) + Math.min(uc, vc);
+			}
+			if (!overlap || match < threshold || match <= bestMatch) {
+				continue;
+			}
+			double Q = mapField.getQ_t(J) + q;
+			double fused = (mapField.getQ_t(J) * mapField.getw_ab(J, K) + q * p) / Q;
+			if (fused * outputDim >= rho_ab) {
+				best = J;
+				bestMatch = match;
+			}
+		}
+		return best;
 	}
 
 	/**
-	 * Return true if training pair (input[], K), with relevance factor q_t was
-	 * learned (correctly or not).
+	 * Learns a single pattern, for online training: one trainPair with the
+	 * relevance of the pattern, without the per-call work of train(List)
+	 * (no epochs, no debug dump of the training set).
+	 * 
+	 * @param pattern
+	 *            the pattern to learn; its input is scaled in place, if not
+	 *            scaled yet
+	 * @return the category which learned the pattern, or the rejection, and
+	 *         the time taken
+	 */
+	public TrainingOutcome trainOne(Pattern pattern) {
+		long start = System.nanoTime();
+		pattern.scaleInput(this.iMin, this.iMax);
+		return trainOne(pattern.getScaledInput(), pattern.getClassIndex(), pattern.getWeight(), start);
+	}
+
+	/**
+	 * Same as trainOne(Pattern), for an input already scaled to [0, 1]
+	 * 
+	 * @param scaledInput
+	 *            the input to learn
+	 * @param classIndex
+	 *            its class
+	 * @param q_t
+	 *            its relevance, greater than 0
+	 * @return the category which learned the pattern, or the rejection, and
+	 *         the time taken
+	 */
+	public TrainingOutcome trainOne(double[] scaledInput, int classIndex, double q_t) {
+		return trainOne(scaledInput, classIndex, q_t, System.nanoTime());
+	}
+
+	private TrainingOutcome trainOne(double[] scaledInput, int classIndex, double q_t, long start) {
+		if (!(q_t > 0)) {
+			throw new IllegalArgumentException("The given relevance should be strictly greater than 0");
+		}
+		Util.checkScaled(scaledInput, "At trainOne, the input is not between 0 and 1.");
+		int categories = art_a.numCategories();
+		int J = trainPair(scaledInput, classIndex, q_t);
+		global_n_pairs++;
+		return new TrainingOutcome(J, J >= categories, System.nanoTime() - start);
+	}
+
+	/**
+	 * Trains the network on pair (input[], K), with relevance factor q_t, and
+	 * returns the category which learned it, if any.
 	 * 
 	 * @param scaledInput
 	 *            the input to be used for training
@@ -125,20 +500,70 @@ public class FAMR implements Serializable {
 	 *            the label associated with the current input
 	 * @param q_t
 	 *            the current relevance
-	 * @return true if the current pattern could be learned, false otherwise
+	 * @return the index of the art_a category which learned the pattern; -1
+	 *         if the pattern was rejected
 	 */
-	private boolean trainPair(double[] scaledInput, int K, double q_t) {
-
-		MapField old_mapField = mapField.clone(); // save MapField
-		FuzzyArt old_art_a = art_a.clone(); // save art_a
+	private int trainPair(double[] scaledInput, int K, double q_t) {
 		art_a.newInput(scaledInput);
+		return trainCurrentInput(K, q_t);
+	}
+
+	/**
+	 * Same as trainPair, for an input already complement coded
+	 * 
+	 * @param codedInput
+	 *            the complement-coded input, checked by the caller
+	 * @param inputNorm
+	 *            |codedInput|
+	 * @param K
+	 *            the label associated with the current input
+	 * @param q_t
+	 *            the current relevance
+	 * @return the index of the art_a category which learned the pattern; -1
+	 *         if the pattern was rejected
+	 */
+	private int trainCodedPair(double[] codedInput, double inputNorm, int K, double q_t) {
+		art_a.newCodedInput(codedInput, inputNorm);
+		return trainCurrentInput(K, q_t);
+	}
 
-		// the output is one-hot encoded
-		FuzzyVector art_b = new FuzzyVector(outputDim);
-		art_b.initValue(0);
-		art_b.setValueAtPos(K, 1);
+	/**
+	 * Learns the input given to art_a with label K and relevance q_t, and
+	 * reports the pair to the metrics, if any
+	 */
+	private int trainCurrentInput(int K, double q_t) {
+		snapshot = null;
+		if (metrics == null) {
+			return learnCurrentInput(K, q_t);
+		}
+		long start = System.nanoTime();
+		// with clone rollback, a rejected pair restores art_a from a clone
+		// taken before the search; the counters are read from the searcher
+		FuzzyArt art = art_a;
+		long scanned = art.getScannedCategories();
+		long resets = art.getVigilanceResets();
+		int categories = art.numCategories();
+		int J = learnCurrentInput(K, q_t);
+		metrics.pairTrained(matchTrackingIterations, art.getVigilanceResets() - resets,
+				art.getScannedCategories() - scanned, J >= categories, J == -1, art_a.numCategories(),
+				System.nanoTime() - start);
+		return J;
+	}
+
+	private int learnCurrentInput(int K, double q_t) {
+		MapField old_mapField = null;
+		FuzzyArt old_art_a = null;
+		if (cloneRollback) {
+			old_mapField = mapField.clone(); // save MapField
+			old_art_a = art_a.clone(); // save art_a
+		} else {
+			// record only the changes of art_a and mapField
+			art_a.beginTransaction();
+			mapField.mark();
+		}
 
 		art_a.restoreRho();
+		matchTrackingIterations = 0;
 		while (true) {
 			int J = art_a.findCategory();
 			if (J == -1)
@@ -148,18 +573,31 @@ public class FAMR implements Serializable {
 				mapField.addWeight_a();
 				J = art_a.numCategories() - 1;
 			}
-			if (mapField.accept(art_b, J)) {
+			// the output is one-hot encoded on K
+			if (mapField.accept(J, K)) {
 				// learn current pair
 				art_a.learn(J);
 				mapField.learn(J, K, q_t);
-				return true;
+				if (!cloneRollback) {
+					art_a.commit();
+					mapField.commit();
+				}
+				return J;
 			} else {
+				matchTrackingIterations++;
 				art_a.increaseRho(J);
 				if (art_a.getRho() > 1) {
 					// reject current pair and restore art_a and mapField
-					art_a = old_art_a;
-					mapField = old_mapField;
-					return false;
+					if (cloneRollback) {
+						// the searches of the rejected pair still count
+						old_art_a.copySearchCounters(art_a);
+						art_a = old_art_a;
+						mapField = old_mapField;
+					} else {
+						art_a.rollback();
+						mapField.rollback();
+					}
+					return -1;
 				} else {
 					continue; // reiterate current input vector
 				}
@@ -212,16 +650,43 @@ public class FAMR implements Serializable {
 	 * @return the inferred label
 	 */
 	private int classifyInputVector(double[] scaledInput) {
+		if (metrics == null) {
+			return labelOf(scaledInput);
+		}
+		long start = System.nanoTime();
+		long scanned = art_a.getScannedCategories();
+		int label = labelOf(scaledInput);
+		metrics.inputClassified(art_a.getScannedCategories() - scanned, System.nanoTime() - start);
+		return label;
+	}
+
+	private int labelOf(double[] scaledInput) {
 		art_a.newInput(scaledInput);
 		int J = art_a.findCategory();
 		if (J == -1) {
-			System.err.println("In classifyInputVector: will return -1");
+			Logger.println("In classifyInputVector: will return -1");
 			return -1;
 		} else {
-			return mapField.getw_ab(J).posMax();
+			return mapField.posMax(J);
 		}
 	}
 
+	/**
+	 * Same as classifyInputVector, for an input already complement coded
+	 * 
+	 * @param codedInput
+	 *            the complement-coded input, checked by the caller
+	 * @param inputNorm
+	 *            |codedInput|
+	 * @return the inferred label; -1 if the network has no category
+	 */
+	int classifyCoded(double[] codedInput, double inputNorm) {
+		art_a.setRhoToZero();
+		art_a.newCodedInput(codedInput, inputNorm);
+		int J = art_a.findCategory();
+		return J == -1 ? -1 : mapField.posMax(J);
+	}
+
 	/**
 	 * Return the conditional probabilities P( output class | input[] ) for all
 	 * output classes.
@@ -263,6 +728,70 @@ public class FAMR implements Serializable {
 		return art_b_classification;
 	}
 
+	/**
+	 * @return Returns the minimum input value, used for scaling.
+	 */
+	public double getIMin() {
+		return this.iMin;
+	}
+
+	/**
+	 * @return Returns the maximum input value, used for scaling.
+	 */
+	public double getIMax() {
+		return this.iMax;
+	}
+
+	/**
+	 * @return Returns the baseline vigilance of art_a.
+	 */
+	public double getRho_init_a() {
+		return this.rho_init_a;
+	}
+
+	/**
+	 * @return Returns the learning rate of art_a.
+	 */
+	public double getBeta_a() {
+		return this.beta_a;
+	}
+
+	/**
+	 * @return Returns the mapfield threshold.
+	 */
+	public double getRho_ab() {
+		return this.rho_ab;
+	}
+
+	/**
+	 * @return true if the network is stored in single precision
+	 */
+	public boolean isSinglePrecision() {
+		return mapField.isSinglePrecision();
+	}
+
+	/**
+	 * @return Returns the number of classes.
+	 */
+	public int getOutputDim() {
+		return this.outputDim;
+	}
+
+	/**
+	 * Creates a read-only copy of the current network, which can classify
+	 * from any number of threads concurrently. Later training of this object
+	 * does not change the snapshot. The copy is kept and returned again until
+	 * the network is trained, so freezing an unchanged network is free.
+	 * 
+	 * @return the inference snapshot
+	 */
+	public FAMRSnapshot freeze() {
+		if (snapshot == null) {
+			snapshot = new FAMRSnapshot(this);
+		}
+		return snapshot;
+	}
+
 	/**
 	 * @return Returns the epochs value.
 	 */
@@ -277,6 +806,75 @@ public class FAMR implements Serializable {
 		return global_n_pairs;
 	}
 
+	/**
+	 * @return true if rejected training pairs are undone by restoring clones
+	 *         of art_a and mapField, false if they are undone from a journal
+	 *         of the changes
+	 */
+	public boolean isCloneRollback() {
+		return cloneRollback;
+	}
+
+	/**
+	 * Chooses how a rejected training pair is undone. The default, journal
+	 * based rollback, only touches the categories and map field rows changed
+	 * by the pair. Clone based rollback copies the whole network before each
+	 * pair; it is kept as a reference for equivalence tests.
+	 * 
+	 * @param cloneRollback
+	 *            true for clone based rollback, false for journal based
+	 *            rollback
+	 */
+	public void setCloneRollback(boolean cloneRollback) {
+		this.cloneRollback = cloneRollback;
+	}
+
+	/**
+	 * @return the receiver of the training and classification events;
+	 *         FAMRMetrics.NONE if they are not measured
+	 */
+	public FAMRMetrics getMetrics() {
+		return metrics == null ? FAMRMetrics.NONE : metrics;
+	}
+
+	/**
+	 * Reports the training pairs and the classified inputs to metrics. With
+	 * FAMRMetrics.NONE, the default, or null, nothing is measured and the
+	 * only cost is one test per pair or input. The metrics are not
+	 * serialized.
+	 * 
+	 * @param metrics
+	 *            the receiver of the events, e.g. a FAMRMetricsRecorder
+	 */
+	public void setMetrics(FAMRMetrics metrics) {
+		this.metrics = metrics == FAMRMetrics.NONE ? null : metrics;
+	}
+
+	/**
+	 * @return true if the map field stores only the classes learned by each
+	 *         input category
+	 */
+	public boolean isSparseMapField() {
+		return mapField.isSparse();
+	}
+
+	/**
+	 * Chooses the storage of the map field rows. Sparse rows keep, for each
+	 * input category, the classes it has learned plus one value shared by the
+	 * other classes, which pays off for thousands of classes. The
+	 * probabilities and the labels are the same for both storages.
+	 * 
+	 * @param sparse
+	 *            true for sparse rows, false for dense rows
+	 */
+	public void setSparseMapField(boolean sparse) {
+		if (mapField.getLinesNo() > 0) {
+			throw new IllegalStateException("The map field storage can only be chosen before training");
+		}
+		mapField = new MapField(this.rho_ab, this.outputDim, mapField.isSinglePrecision(), 0, sparse);
+		snapshot = null;
+	}
+
 	/**
 	 * @return Returns the mapField.
 	 */
@@ -301,6 +899,19 @@ public class FAMR implements Serializable {
 		return (double) correctlyClassified / patterns.size();
 	}
 
+	/**
+	 * Classifies a list of patterns in parallel, on the common fork-join pool,
+	 * using a snapshot of the current network. The snapshot is taken by
+	 * freeze, so batches scored between two trainings share one copy.
+	 * 
+	 * @param patterns
+	 *            the patterns to be classified
+	 * @return labels and winning categories, in input order
+	 */
+	public BatchClassification classifyBatch(List<Pattern> patterns) {
+		return freeze().classifyBatch(patterns);
+	}
+
 	/**
 	 * Return the number of input categories
 	 * 
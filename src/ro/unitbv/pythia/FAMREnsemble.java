@@ -0,0 +1,240 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ensemble of FAMR networks with the same hyperparameters, each trained on
+ * its own permutation of the training set. The patterns are scaled and
+ * complement coded once, and the coded arrays are shared, read-only, by all
+ * members; the members are trained in parallel, one task each, and do not
+ * share any mutable state.
+ *
+ * After training, each member is frozen into a FAMRSnapshot; the ensemble
+ * classifies by averaging the P( class | input ) vectors of the members, so
+ * it can be queried by any number of threads.
+ */
+public final class FAMREnsemble extends Classifier {
+
+	private final FAMR members[];
+	private final long seed;
+	private FAMRSnapshot snapshots[] = null;
+
+	/**
+	 * @param size
+	 *            number of member networks
+	 * @param seed
+	 *            seed of the permutations; member i shuffles the training set
+	 *            with new Random(seed + i)
+	 * @param rho_init_a
+	 *            baseline vigilance parameter
+	 * @param beta_a
+	 *            used for category learning
+	 * @param rho_ab
+	 *            mapfield threshold
+	 * @param epochs
+	 *            how many iterations over the training set
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum output value
+	 * @param outputDim
+	 *            maximum number of classes
+	 */
+	public FAMREnsemble(int size, long seed, double rho_init_a, double beta_a, double rho_ab, int epochs,
+			double iMin, double iMax, int outputDim) {
+		this(size, seed, rho_init_a, beta_a, rho_ab, epochs, iMin, iMax, outputDim, false);
+	}
+
+	/**
+	 * @param size
+	 *            number of member networks
+	 * @param seed
+	 *            seed of the permutations; member i shuffles the training set
+	 *            with new Random(seed + i)
+	 * @param rho_init_a
+	 *            baseline vigilance parameter
+	 * @param beta_a
+	 *            used for category learning
+	 * @param rho_ab
+	 *            mapfield threshold
+	 * @param epochs
+	 *            how many iterations over the training set
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum output value
+	 * @param outputDim
+	 *            maximum number of classes
+	 * @param singlePrecision
+	 *            true to store the members in single precision
+	 */
+	public FAMREnsemble(int size, long seed, double rho_init_a, double beta_a, double rho_ab, int epochs,
+			double iMin, double iMax, int outputDim, boolean singlePrecision) {
+		if (size < 1) {
+			throw new IllegalArgumentException("An ensemble needs at least one member");
+		}
+		this.seed = seed;
+		this.members = new FAMR[size];
+		for (int i = 0; i < size; i++) {
+			members[i] = new FAMR(rho_init_a, beta_a, rho_ab, epochs, iMin, iMax, outputDim, singlePrecision);
+		}
+	}
+
+	/**
+	 * Trains all members on the common fork-join pool
+	 *
+	 * @param patterns
+	 *            the training dataset; the inputs are scaled in place
+	 */
+	public void train(List<Pattern> patterns) {
+		train(patterns, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Trains all members, one task per member, on the given pool. Each member
+	 * sees the patterns in its own order, the same in every epoch, and ends
+	 * up exactly as a FAMR trained by train(List) on the permuted list.
+	 *
+	 * @param patterns
+	 *            the training dataset; the inputs are scaled in place
+	 * @param pool
+	 *            the pool running the training tasks
+	 */
+	public void train(List<Pattern> patterns, ForkJoinPool pool) {
+		FAMR first = members[0];
+		CodedPatterns coded = new CodedPatterns(patterns, first.getIMin(), first.getIMax());
+		int n = coded.size();
+
+		List<MemberTask> tasks = new ArrayList<MemberTask>(members.length);
+		for (int i = 0; i < members.length; i++) {
+			tasks.add(new MemberTask(members[i], Util.permutation(n, seed + i), coded));
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+
+		snapshots = new FAMRSnapshot[members.length];
+		for (int i = 0; i < members.length; i++) {
+			snapshots[i] = members[i].freeze();
+			Logger.println("Ensemble member " + i + ": " + members[i].getInputCategoriesNo()
+					+ " input categories, " + tasks.get(i).rejected + " rejected pairs in the last epoch");
+		}
+	}
+
+	/**
+	 * Trains one member on the shared coded patterns
+	 */
+	private static final class MemberTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final FAMR member;
+		private final int order[];
+		private final CodedPatterns coded;
+		private int rejected;
+
+		MemberTask(FAMR member, int[] order, CodedPatterns coded) {
+			this.member = member;
+			this.order = order;
+			this.coded = coded;
+		}
+
+		@Override
+		protected void compute() {
+			rejected = member.trainCoded(coded, order);
+		}
+	}
+
+	/**
+	 * Return the conditional probabilities P( output class | input ) for all
+	 * output classes, averaged over the members; classifyInputVector returns
+	 * the class with the maximum average, ties going to the lowest index
+	 *
+	 * @param scaledInput
+	 *            the input, scaled in [0, 1]
+	 * @return a vector of conditional probabilities
+	 */
+	@Override
+	public double[] getProbVector(double[] scaledInput) {
+		if (snapshots == null) {
+			throw new IllegalStateException("The ensemble is not trained");
+		}
+		double result[] = new double[getOutputDim()];
+		for (FAMRSnapshot snapshot : snapshots) {
+			double p[] = snapshot.getProbVector(scaledInput);
+			for (int k = 0; k < result.length; k++) {
+				result[k] += p[k];
+			}
+		}
+		for (int k = 0; k < result.length; k++) {
+			result[k] /= snapshots.length;
+		}
+		return result;
+	}
+
+	@Override
+	public double getIMin() {
+		return members[0].getIMin();
+	}
+
+	@Override
+	public double getIMax() {
+		return members[0].getIMax();
+	}
+
+	@Override
+	public int getOutputDim() {
+		return members[0].getOutputDim();
+	}
+
+	/**
+	 * @return the number of members
+	 */
+	public int size() {
+		return members.length;
+	}
+
+	/**
+	 * @param i
+	 *            the index of a member
+	 * @return the member network; training it further does not change the
+	 *         ensemble predictions until the ensemble is trained again
+	 */
+	public FAMR getMember(int i) {
+		return members[i];
+	}
+
+	/**
+	 * @return the seed of the permutations
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the number of input categories of each member
+	 */
+	public int[] getInputCategoriesNo() {
+		int result[] = new int[members.length];
+		for (int i = 0; i < members.length; i++) {
+			result[i] = members[i].getInputCategoriesNo();
+		}
+		return result;
+	}
+
+	/**
+	 * Human readable summary
+	 */
+	public String toString() {
+		return "FAMREnsemble of " + members.length + " members, input categories "
+				+ Arrays.toString(getInputCategoriesNo());
+	}
+}
@@ -0,0 +1,54 @@
+package ro.unitbv.pythia;
+
+/**
+ * Receives the hot-path events of a FAMR, see FAMR.setMetrics. The methods
+ * are called on the training or classifying thread, once per pair or input,
+ * and should return quickly. The default methods ignore the events.
+ *
+ * FAMRMetricsRecorder keeps counters and latency histograms of the events and
+ * can expose them through JMX.
+ */
+public interface FAMRMetrics {
+
+	/**
+	 * Ignores every event; FAMR skips the measurements when it is given this
+	 * instance
+	 */
+	FAMRMetrics NONE = new FAMRMetrics() {
+	};
+
+	/**
+	 * Called after a training pair was learned or rejected
+	 *
+	 * @param matchTrackingIterations
+	 *            how many times the mapfield refused the chosen category and
+	 *            the vigilance was raised
+	 * @param vigilanceResets
+	 *            categories rejected by the vigilance test, see
+	 *            FuzzyArt.getVigilanceResets()
+	 * @param scannedCategories
+	 *            categories whose match value was computed
+	 * @param newCategory
+	 *            true if the pair created a category
+	 * @param rejected
+	 *            true if the pair was rejected and rolled back
+	 * @param categories
+	 *            the number of categories after the pair
+	 * @param nanos
+	 *            the time taken by the pair
+	 */
+	default void pairTrained(int matchTrackingIterations, long vigilanceResets, long scannedCategories,
+			boolean newCategory, boolean rejected, int categories, long nanos) {
+	}
+
+	/**
+	 * Called after an input was classified
+	 *
+	 * @param scannedCategories
+	 *            categories whose match value was computed
+	 * @param nanos
+	 *            the time taken by the classification
+	 */
+	default void inputClassified(long scannedCategories, long nanos) {
+	}
+}
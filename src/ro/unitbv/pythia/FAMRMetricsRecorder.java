@@ -0,0 +1,264 @@
+package ro.unitbv.pythia;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * FAMRMetrics which keeps counters and latency histograms of the events. The
+ * counters are LongAdders, so one recorder can be shared by networks trained
+ * or queried on several threads. register exposes the recorder as a standard
+ * MBean of the platform MBean server.
+ */
+public final class FAMRMetricsRecorder implements FAMRMetrics, FAMRMetricsRecorderMBean {
+
+	private final LongAdder trainedPairs = new LongAdder();
+	private final LongAdder rejectedPairs = new LongAdder();
+	private final LongAdder newCategories = new LongAdder();
+	private final LongAdder matchTrackingIterations = new LongAdder();
+	private final LongAdder vigilanceResets = new LongAdder();
+	private final LongAdder trainingScanned = new LongAdder();
+	private final LongAdder classifiedInputs = new LongAdder();
+	private final LongAdder classificationScanned = new LongAdder();
+	private final LatencyHistogram training = new LatencyHistogram();
+	private final LatencyHistogram classification = new LatencyHistogram();
+	private volatile int categories = 0;
+
+	@Override
+	public void pairTrained(int matchTrackingIterations, long vigilanceResets, long scannedCategories,
+			boolean newCategory, boolean rejected, int categories, long nanos) {
+		trainedPairs.increment();
+		if (rejected) {
+			rejectedPairs.increment();
+		}
+		if (newCategory) {
+			newCategories.increment();
+		}
+		this.matchTrackingIterations.add(matchTrackingIterations);
+		this.vigilanceResets.add(vigilanceResets);
+		trainingScanned.add(scannedCategories);
+		this.categories = categories;
+		training.record(nanos);
+	}
+
+	@Override
+	public void inputClassified(long scannedCategories, long nanos) {
+		classifiedInputs.increment();
+		classificationScanned.add(scannedCategories);
+		classification.record(nanos);
+	}
+
+	/**
+	 * Registers this recorder in the platform MBean server
+	 *
+	 * @param name
+	 *            distinguishes the recorder, e.g. the name of the model
+	 * @return the name of the MBean, ro.unitbv.pythia:type=FAMRMetrics,name=...
+	 * @throws JMException
+	 *             if the name is not valid or already registered
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("ro.unitbv.pythia:type=FAMRMetrics,name=" + ObjectName.quote(name));
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		server.registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * @return the number of training pairs processed
+	 */
+	@Override
+	public long getTrainedPairs() {
+		return trainedPairs.sum();
+	}
+
+	/**
+	 * @return the number of training pairs rejected and rolled back
+	 */
+	@Override
+	public long getRejectedPairs() {
+		return rejectedPairs.sum();
+	}
+
+	/**
+	 * @return the fraction of rejected training pairs
+	 */
+	@Override
+	public double getRejectedPairRate() {
+		return ratio(rejectedPairs.sum(), trainedPairs.sum());
+	}
+
+	/**
+	 * @return the number of categories created
+	 */
+	@Override
+	public long getNewCategories() {
+		return newCategories.sum();
+	}
+
+	/**
+	 * @return the number of categories after the last training pair
+	 */
+	@Override
+	public int getCategories() {
+		return categories;
+	}
+
+	/**
+	 * @return the total number of match tracking iterations
+	 */
+	@Override
+	public long getMatchTrackingIterations() {
+		return matchTrackingIterations.sum();
+	}
+
+	/**
+	 * @return the mean number of match tracking iterations per training pair
+	 */
+	@Override
+	public double getMatchTrackingIterationsPerPair() {
+		return ratio(matchTrackingIterations.sum(), trainedPairs.sum());
+	}
+
+	/**
+	 * @return the total number of vigilance resets during training
+	 */
+	@Override
+	public long getVigilanceResets() {
+		return vigilanceResets.sum();
+	}
+
+	/**
+	 * @return the mean number of vigilance resets per training pair
+	 */
+	@Override
+	public double getVigilanceResetsPerPair() {
+		return ratio(vigilanceResets.sum(), trainedPairs.sum());
+	}
+
+	/**
+	 * @return the categories scanned for training pairs and classified inputs
+	 */
+	@Override
+	public long getScannedCategories() {
+		return trainingScanned.sum() + classificationScanned.sum();
+	}
+
+	/**
+	 * @return the mean number of scanned categories per training pair or
+	 *         classified input
+	 */
+	@Override
+	public double getScannedCategoriesPerInput() {
+		return ratio(getScannedCategories(), trainedPairs.sum() + classifiedInputs.sum());
+	}
+
+	/**
+	 * @return the mean time of a training pair, in nanoseconds
+	 */
+	@Override
+	public double getTrainingMeanNanos() {
+		return training.getMean();
+	}
+
+	/**
+	 * @return the median time of a training pair, within a factor of 2
+	 */
+	@Override
+	public long getTrainingP50Nanos() {
+		return training.getPercentile(0.5);
+	}
+
+	/**
+	 * @return the 99th percentile of the time of a training pair, within a
+	 *         factor of 2
+	 */
+	@Override
+	public long getTrainingP99Nanos() {
+		return training.getPercentile(0.99);
+	}
+
+	/**
+	 * @return the number of classified inputs
+	 */
+	@Override
+	public long getClassifiedInputs() {
+		return classifiedInputs.sum();
+	}
+
+	/**
+	 * @return the mean time of a classification, in nanoseconds
+	 */
+	@Override
+	public double getClassificationMeanNanos() {
+		return classification.getMean();
+	}
+
+	/**
+	 * @return the median time of a classification, within a factor of 2
+	 */
+	@Override
+	public long getClassificationP50Nanos() {
+		return classification.getPercentile(0.5);
+	}
+
+	/**
+	 * @return the 99th percentile of the time of a classification, within a
+	 *         factor of 2
+	 */
+	@Override
+	public long getClassificationP99Nanos() {
+		return classification.getPercentile(0.99);
+	}
+
+	/**
+	 * @return the histogram of the training pair times
+	 */
+	public LatencyHistogram getTrainingLatency() {
+		return training;
+	}
+
+	/**
+	 * @return the histogram of the classification times
+	 */
+	public LatencyHistogram getClassificationLatency() {
+		return classification;
+	}
+
+	/**
+	 * Sets every counter and histogram to 0
+	 */
+	@Override
+	public void reset() {
+		trainedPairs.reset();
+		rejectedPairs.reset();
+		newCategories.reset();
+		matchTrackingIterations.reset();
+		vigilanceResets.reset();
+		trainingScanned.reset();
+		classifiedInputs.reset();
+		classificationScanned.reset();
+		training.reset();
+		classification.reset();
+		categories = 0;
+	}
+
+	private static double ratio(long a, long b) {
+		return b == 0 ? 0 : (double) a / b;
+	}
+
+	/**
+	 * Human readable summary
+	 */
+	public String toString() {
+		return "pairs= " + getTrainedPairs() + "; rejected= " + getRejectedPairRate() + "; categories= "
+				+ getCategories() + "; match tracking per pair= " + getMatchTrackingIterationsPerPair()
+				+ "; resets per pair= " + getVigilanceResetsPerPair() + "; scanned per input= "
+				+ getScannedCategoriesPerInput() + "; training p50/p99 ns= " + getTrainingP50Nanos() + "/"
+				+ getTrainingP99Nanos() + "; classified= " + getClassifiedInputs() + "; classification p50/p99 ns= "
+				+ getClassificationP50Nanos() + "/" + getClassificationP99Nanos();
+	}
+}
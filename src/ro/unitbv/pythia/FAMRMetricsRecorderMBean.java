@@ -0,0 +1,45 @@
+package ro.unitbv.pythia;
+
+/**
+ * JMX view of a FAMRMetricsRecorder
+ */
+public interface FAMRMetricsRecorderMBean {
+
+	long getTrainedPairs();
+
+	long getRejectedPairs();
+
+	double getRejectedPairRate();
+
+	long getNewCategories();
+
+	int getCategories();
+
+	long getMatchTrackingIterations();
+
+	double getMatchTrackingIterationsPerPair();
+
+	long getVigilanceResets();
+
+	double getVigilanceResetsPerPair();
+
+	long getScannedCategories();
+
+	double getScannedCategoriesPerInput();
+
+	double getTrainingMeanNanos();
+
+	long getTrainingP50Nanos();
+
+	long getTrainingP99Nanos();
+
+	long getClassifiedInputs();
+
+	double getClassificationMeanNanos();
+
+	long getClassificationP50Nanos();
+
+	long getClassificationP99Nanos();
+
+	void reset();
+}
@@ -0,0 +1,238 @@
+package ro.unitbv.pythia;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Read-only copy of a trained FAMR, used for classification. It holds the
+ * art_a weights and the mapfield probabilities in primitive arrays, or in
+ * SparseRows for a sparse mapfield, and never changes after construction, so
+ * one instance can be queried by any number of threads without locking. The
+ * scratch state of a query (the complement-coded input) is local to the
+ * call.
+ *
+ * Obtain it with FAMR.freeze(); further training of the FAMR does not affect
+ * the snapshot.
+ */
+public final class FAMRSnapshot extends CategoryClassifier implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	// number of inputs classified sequentially by one fork-join task
+	private static final int BATCH_CHUNK = 256;
+	private final double iMin;
+	private final double iMax;
+	private final int outputDim;
+	private final int inputDim; // length of an un-normalized input
+	private final int numCategories;
+	private final CategoryStore categories; // art_a weights and norms; never changed
+	// mapfield probabilities, row j starts at j * outputDim; w_abf in single precision mode
+	private final double w_ab[];
+	private final float w_abf[];
+	private final SparseRows sparseRows; // used instead of w_ab / w_abf for a sparse mapfield
+
+	/**
+	 * Copies the state of famr
+	 *
+	 * @param famr
+	 *            the trained model
+	 */
+	FAMRSnapshot(FAMR famr) {
+		this.iMin = famr.getIMin();
+		this.iMax = famr.getIMax();
+		this.outputDim = famr.getOutputDim();
+		this.categories = famr.getArt_a().getCategories().trimmedCopy();
+		this.numCategories = categories.size();
+		this.inputDim = Math.max(categories.inputDim(), 0);
+		MapField mapField = famr.getMapField();
+		if (mapField.isSparse()) {
+			this.w_ab = null;
+			this.w_abf = null;
+			this.sparseRows = mapField.getSparseRows().copy(numCategories);
+		} else if (mapField.isSinglePrecision()) {
+			this.sparseRows = null;
+			this.w_ab = null;
+			this.w_abf = new float[numCategories * outputDim];
+			for (int j = 0; j < numCategories; j++) {
+				double row[] = mapField.getw_ab(j).v;
+				for (int k = 0; k < outputDim; k++) {
+					w_abf[j * outputDim + k] = (float) row[k];
+				}
+			}
+		} else {
+			this.sparseRows = null;
+			this.w_ab = new double[numCategories * outputDim];
+			this.w_abf = null;
+			for (int j = 0; j < numCategories; j++) {
+				System.arraycopy(mapField.getw_ab(j).v, 0, w_ab, j * outputDim, outputDim);
+			}
+		}
+	}
+
+	/**
+	 * Classifies a list of patterns on the common fork-join pool
+	 *
+	 * @param patterns
+	 *            the patterns to be classified; they are scaled in place, as
+	 *            by classifySingleInstance
+	 * @return labels and winning categories, in input order
+	 */
+	public BatchClassification classifyBatch(List<Pattern> patterns) {
+		return classifyBatch(patterns, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Classifies a list of patterns on the given fork-join pool
+	 *
+	 * @param patterns
+	 *            the patterns to be classified; they are scaled in place, as
+	 *            by classifySingleInstance
+	 * @param pool
+	 *            the pool running the classification tasks
+	 * @return labels and winning categories, in input order
+	 */
+	public BatchClassification classifyBatch(List<Pattern> patterns, ForkJoinPool pool) {
+		if (!(patterns instanceof RandomAccess)) {
+			patterns = new ArrayList<Pattern>(patterns);
+		}
+		BatchClassification result = new BatchClassification(patterns.size());
+		pool.invoke(new BatchTask(patterns, null, result, 0, patterns.size()));
+		return result;
+	}
+
+	/**
+	 * Classifies a matrix of scaled inputs on the common fork-join pool
+	 *
+	 * @param scaledInputs
+	 *            one scaled input per row
+	 * @return labels and winning categories, in input order
+	 */
+	public BatchClassification classifyBatch(double[][] scaledInputs) {
+		return classifyBatch(scaledInputs, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Classifies a matrix of scaled inputs on the given fork-join pool
+	 *
+	 * @param scaledInputs
+	 *            one scaled input per row
+	 * @param pool
+	 *            the pool running the classification tasks
+	 * @return labels and winning categories, in input order
+	 */
+	public BatchClassification classifyBatch(double[][] scaledInputs, ForkJoinPool pool) {
+		BatchClassification result = new BatchClassification(scaledInputs.length);
+		pool.invoke(new BatchTask(null, scaledInputs, result, 0, scaledInputs.length));
+		return result;
+	}
+
+	/**
+	 * Classifies the inputs [from, to) of a batch, splitting the range in
+	 * halves down to BATCH_CHUNK inputs. A leaf task reuses one scratch
+	 * buffer for all its inputs.
+	 */
+	private final class BatchTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final List<Pattern> patterns;
+		private final double scaledInputs[][];
+		private final BatchClassification result;
+		private final int from;
+		private final int to;
+
+		BatchTask(List<Pattern> patterns, double[][] scaledInputs, BatchClassification result, int from, int to) {
+			this.patterns = patterns;
+			this.scaledInputs = scaledInputs;
+			this.result = result;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > BATCH_CHUNK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new BatchTask(patterns, scaledInputs, result, from, middle),
+						new BatchTask(patterns, scaledInputs, result, middle, to));
+				return;
+			}
+			double scratch[] = new double[2 * inputDim];
+			for (int i = from; i < to; i++) {
+				double scaledInput[];
+				if (patterns != null) {
+					Pattern pattern = patterns.get(i);
+					pattern.scaleInput(iMin, iMax);
+					scaledInput = pattern.getScaledInput();
+				} else {
+					scaledInput = scaledInputs[i];
+				}
+				int J = findCategory(scaledInput, scratch);
+				result.set(i, J, labelOf(J));
+			}
+		}
+	}
+
+	@Override
+	int findCategory(double[] scaledInput, double[] scratch) {
+		if (numCategories == 0) {
+			return -1;
+		}
+		if (scaledInput.length != inputDim) {
+			throw new RuntimeException("Size mismatch: expected input of length " + inputDim + ", got "
+					+ scaledInput.length);
+		}
+		Util.complementCode(scaledInput, scratch);
+		double norms[] = categories.norms;
+		int J = -1;
+		double TMax = -1;
+		for (int j = 0; j < numCategories; j++) {
+			double T = categories.match(scratch, j) / (FuzzyArt.ALPHA + norms[j]);
+			if (T > TMax) {
+				J = j;
+				TMax = T;
+			}
+		}
+		return J;
+	}
+
+	@Override
+	double probability(int J, int k) {
+		if (sparseRows != null) {
+			return sparseRows.get(J, k);
+		}
+		return w_ab != null ? w_ab[J * outputDim + k] : w_abf[J * outputDim + k];
+	}
+
+	@Override
+	SparseRowsView sparseRows() {
+		return sparseRows;
+	}
+
+	@Override
+	public int getInputCategoriesNo() {
+		return numCategories;
+	}
+
+	@Override
+	public int getOutputDim() {
+		return outputDim;
+	}
+
+	@Override
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	@Override
+	public double getIMin() {
+		return iMin;
+	}
+
+	@Override
+	public double getIMax() {
+		return iMax;
+	}
+}
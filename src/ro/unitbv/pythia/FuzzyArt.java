@@ -1,7 +1,8 @@
 package ro.unitbv.pythia;
 
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -21,21 +22,33 @@ public class FuzzyArt implements Serializable, Cloneable {
 	/**
 	 * 
 	 */
-	private static final long serialVersionUID = 2L;
+	private static final long serialVersionUID = 3L;
 
 	private final double rho_init;
 	// choice parameter: a small positive value
-	private static final double ALPHA = 0.0001;
+	static final double ALPHA = 0.0001;
+	// relative slack on the upper bound of T, covering rounding errors
+	private static final double BOUND_SLACK = 1 + 1e-9;
 	private static final double DELTA = 0.0001; // a small positive value
 	private final double beta;
-	private List<FuzzyVector> w = new LinkedList<FuzzyVector>();
-	private FuzzyVector normalizedInput = null;
-	private FuzzyVector unNormalizedInput = null;
+	private CategoryStore categories; // weights, centroids and sizes of the categories
+	private double normalizedInput[] = null; // complement-coded input
+	private double unNormalizedInput[] = null;
+	private double inputNorm = 0; // |normalizedInput|
 	private double rho = 0;
-	private List<Double> T = new LinkedList<Double>();
-	private List<Boolean> eligible = new LinkedList<Boolean>();
-	private List<FuzzyVector> centroids = new LinkedList<FuzzyVector>();
-	private List<Integer> category_size = new LinkedList<Integer>(); // number of representants per category
+	private double T[];
+	private double match[]; // |normalizedInput and w[j]|, filled in by computeT
+	private boolean eligible[];
+	private double markedRho = 0; // rho saved by beginTransaction
+	private transient CandidateHeap candidates = null; // ranking used after a vigilance reset
+	private boolean pruning = true; // skip categories which cannot win, see findCategoryPruned
+	private long scannedCategories = 0; // categories whose match was computed by findCategory
+	private long skippedCategories = 0; // categories skipped by the bounds
+	private long vigilanceResets = 0; // categories rejected by the vigilance test, see getVigilanceResets
+	private boolean spatialIndex = false; // search the categories through an R-tree of their boxes
+	private transient HyperboxIndex index = null; // built by the first indexed search
+	// from this many categories on, the winner search runs in parallel
+	private int parallelSearchThreshold = Integer.MAX_VALUE;
 
 	/**
 	 * @param rho_init
@@ -44,86 +57,399 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 *            used during learning
 	 */
 	public FuzzyArt(double rho_init, double beta) {
+		this(rho_init, beta, 0);
+	}
+
+	/**
+	 * @param rho_init
+	 *            the baseline rho value
+	 * @param beta
+	 *            used during learning
+	 * @param initialCapacity
+	 *            expected number of categories; 0 for the default
+	 */
+	public FuzzyArt(double rho_init, double beta, int initialCapacity) {
+		this(rho_init, beta, initialCapacity, false);
+	}
+
+	/**
+	 * @param rho_init
+	 *            the baseline rho value
+	 * @param beta
+	 *            used during learning
+	 * @param initialCapacity
+	 *            expected number of categories; 0 for the default
+	 * @param singlePrecision
+	 *            true to store the weights and the centroids as float; the
+	 *            choice and match values are still computed in double
+	 */
+	public FuzzyArt(double rho_init, double beta, int initialCapacity, boolean singlePrecision) {
 		this.rho = this.rho_init = rho_init;
 		this.beta = beta;
+		this.categories = new CategoryStore(initialCapacity, singlePrecision);
+		this.T = new double[categories.capacity()];
+		this.match = new double[categories.capacity()];
+		this.eligible = new boolean[categories.capacity()];
 	}
 
 	/**
 	 * Take a new (unnormalized) input of the network and compute the normalized
-	 * form of input in normalizedInput.
+	 * form of input in normalizedInput. The input buffers are reused between
+	 * calls.
 	 * @param scaledInput the scaled input to be learned or tested
 	 */
 	void newInput(double[] scaledInput) {
-		Util.checkScaled(scaledInput, "In newInput: the scaledInput vector is not between 0 and 1.");
-		unNormalizedInput = new FuzzyVector(scaledInput);
-		normalizedInput = unNormalizedInput.normalize();
-		for (int i = 0; i < w.size(); i++) {
-			eligible.set(i, true);
+		categories.checkInputDim(scaledInput.length);
+		int dim = scaledInput.length;
+		if (unNormalizedInput == null) {
+			unNormalizedInput = new double[dim];
+			normalizedInput = new double[2 * dim];
+		}
+		inputNorm = Util.complementCode(scaledInput, normalizedInput);
+		System.arraycopy(scaledInput, 0, unNormalizedInput, 0, dim);
+		Arrays.fill(eligible, 0, categories.size(), true);
+	}
+
+	/**
+	 * Same as newInput, for an input already complement coded and checked,
+	 * usually shared by several networks. The values are copied.
+	 * @param codedInput the complement-coded input, of length 2 * dim
+	 * @param norm |codedInput|, as computed by Kernels.sum
+	 */
+	void newCodedInput(double[] codedInput, double norm) {
+		int dim = codedInput.length / 2;
+		categories.checkInputDim(dim);
+		if (unNormalizedInput == null) {
+			unNormalizedInput = new double[dim];
+			normalizedInput = new double[2 * dim];
 		}
+		System.arraycopy(codedInput, 0, unNormalizedInput, 0, dim);
+		System.arraycopy(codedInput, 0, normalizedInput, 0, 2 * dim);
+		inputNorm = norm;
+		Arrays.fill(eligible, 0, categories.size(), true);
 	}
 
 	/**
-	 * Computes activation function T called by findCategory.
+	 * Computes activation function T called by findCategory. The match values
+	 * |I and w[j]| are kept in match, for the vigilance test and for match
+	 * tracking.
 	 */
 	private void computeT() {
-		for (int j = 0; j < w.size(); j++) {
-			double valueT = (normalizedInput.and(w.get(j))).norm() / (ALPHA + w.get(j).norm());
-			T.set(j, valueT);
+		double norms[] = categories.norms;
+		int n = categories.size();
+		if (n >= parallelSearchThreshold) {
+			ParallelSearch.computeT(normalizedInput, categories, ALPHA, match, T);
+			return;
+		}
+		for (int j = 0; j < n; j++) {
+			match[j] = categories.match(normalizedInput, j);
+			T[j] = match[j] / (ALPHA + norms[j]);
 		}
 	}
 
 	/**
 	 * Find and return category J for which T[J] is maximum and threshold test
-	 * is passed. If no such category exists, this method returns -1
+	 * is passed. If no such category exists, this method returns -1.
+	 * The first candidate is found by a scan; if it is reset by the vigilance
+	 * test, the remaining candidates are ranked once, in a heap, and taken in
+	 * decreasing order of T. Above the parallel search threshold, every
+	 * re-search is a parallel scan instead.
 	 * @return the index of winning category; -1 if no winner is found
 	 */
 	public int findCategory() {
+		int n = categories.size();
+		if (spatialIndex && n > 0 && n < parallelSearchThreshold) {
+			return findCategoryIndexed();
+		}
+		if (pruning && n < parallelSearchThreshold) {
+			return findCategoryPruned();
+		}
 		computeT();
-		while (true) {
-			int J = -1;
-			double TMax = -1;
-			for (int j = 0; j < w.size(); j++) {
-				if (eligible.get(j) && T.get(j) > TMax) {
+		scannedCategories += n;
+		int J = -1;
+		double TMax = -1;
+		if (n >= parallelSearchThreshold) {
+			J = ParallelSearch.argMax(T, eligible, n);
+		} else {
+			for (int j = 0; j < n; j++) {
+				if (eligible[j] && T[j] > TMax) {
 					J = j;
-					TMax = T.get(j);
+					TMax = T[j];
 				}
 			}
-
-			if (J == -1) {
-				return J; // no category could be matched
+		}
+		if (J == -1 || match[J] >= rho * inputNorm) {
+			return J; // -1 if no category could be matched
+		}
+		vigilanceResets++;
+		eligible[J] = false; // this category is inhibited fro the
+								// current pattern
+		if (n >= parallelSearchThreshold) {
+			// a sequential heap build would cost more than the parallel
+			// re-search for the first resets
+			while (true) {
+				J = ParallelSearch.argMax(T, eligible, n);
+				if (J == -1 || match[J] >= rho * inputNorm) {
+					return J;
+				}
+				vigilanceResets++;
+				eligible[J] = false;
 			}
-
-			FuzzyVector x_a = normalizedInput.and(w.get(J));
-			if (x_a.norm() >= rho * normalizedInput.norm()) {
+		}
+		if (candidates == null) {
+			candidates = new CandidateHeap();
+		}
+		candidates.build(T, eligible, n);
+		while (true) {
+			J = candidates.poll();
+			if (J == -1 || match[J] >= rho * inputNorm) {
 				return J;
-			} else {
-				eligible.set(J, false); // this category is inhibited fro the
-										// current pattern
 			}
+			vigilanceResets++;
+			eligible[J] = false;
+		}
+	}
+
+	/**
+	 * Same result as the exhaustive search, but categories are visited by
+	 * decreasing norm and most are never touched. With complement coding,
+	 * |I and w[j]| &lt;= min(|I|, |w[j]|), so:
+	 * - a category with |w[j]| &lt; rho * |I| cannot pass the vigilance test;
+	 * - T[j] &lt;= min(|I|, |w[j]|) / (ALPHA + min(|I|, |w[j]|)), which does
+	 * not increase with decreasing |w[j]|.
+	 * The scan stops when the bound of the next category is below the best
+	 * category found so far which passes the vigilance test.
+	 * @return the index of winning category; -1 if no winner is found
+	 */
+	private int findCategoryPruned() {
+		int n = categories.size();
+		int order[] = categories.byNorm;
+		double norms[] = categories.norms;
+		double threshold = rho * inputNorm;
+		int J = -1;
+		double TMax = -1;
+		int scanned = 0;
+		int resets = 0;
+		for (int k = 0; k < n; k++) {
+			int j = order[k];
+			double norm = norms[j];
+			if (norm < threshold) {
+				break; // neither this nor the next categories can pass vigilance
+			}
+			double bound = Math.min(norm, inputNorm);
+			if (bound / (ALPHA + bound) * BOUND_SLACK < TMax) {
+				break; // neither this nor the next categories can win
+			}
+			if (!eligible[j]) {
+				continue;
+			}
+			scanned++;
+			match[j] = categories.match(normalizedInput, j);
+			T[j] = match[j] / (ALPHA + norm);
+			if (match[j] >= threshold && (T[j] > TMax || (T[j] == TMax && j < J))) {
+				J = j;
+				TMax = T[j];
+			} else if (match[j] < threshold && T[j] > TMax) {
+				resets++;
+			}
+		}
+		scannedCategories += scanned;
+		vigilanceResets += resets;
+		skippedCategories += n - scanned;
+		return J;
+	}
+
+	/**
+	 * Same result as the exhaustive search, through the hyperbox index: the
+	 * subtrees whose bounding box is too far from the input, or whose
+	 * categories are too small, are not visited.
+	 * @return the index of winning category; -1 if no winner is found
+	 */
+	private int findCategoryIndexed() {
+		if (index == null) {
+			index = new HyperboxIndex(categories);
+		}
+		int J = index.search(unNormalizedInput, normalizedInput, inputNorm, rho * inputNorm, ALPHA, eligible, match,
+				T);
+		scannedCategories += index.lastScanned();
+		vigilanceResets += index.lastResets();
+		skippedCategories += categories.size() - index.lastScanned();
+		return J;
+	}
+
+	/**
+	 * Enables or disables the spatial index of the categories. Each category
+	 * is a hyperbox in the input space; with the index, findCategory visits
+	 * only the boxes containing or near the input, which pays off for a low or
+	 * moderate input dimension and many categories. The index is kept up to
+	 * date by createNewCategory, learn and rollback, and findCategory returns
+	 * the same category as without it. clone copies the tree instead of
+	 * rebuilding it, so the index also suits clone rollback. It takes
+	 * precedence over pruning, but not over the parallel search.
+	 * @param spatialIndex true to search the categories through the index
+	 */
+	public void setSpatialIndex(boolean spatialIndex) {
+		this.spatialIndex = spatialIndex;
+		if (!spatialIndex) {
+			index = null;
 		}
 	}
 
+	/**
+	 * @return true if findCategory searches the categories through the
+	 *         spatial index
+	 */
+	public boolean isSpatialIndex() {
+		return spatialIndex;
+	}
+
+	/**
+	 * Enables or disables the bound-based pruning of findCategory; it is
+	 * enabled by default. Both searches return the same category.
+	 * @param pruning true to skip the categories which cannot win
+	 */
+	public void setPruning(boolean pruning) {
+		this.pruning = pruning;
+	}
+
+	/**
+	 * @return true if findCategory skips the categories which cannot win
+	 */
+	public boolean isPruning() {
+		return pruning;
+	}
+
+	/**
+	 * @return how many categories had their match value computed by
+	 *         findCategory, since creation or the last resetSearchCounters()
+	 */
+	public long getScannedCategories() {
+		return scannedCategories;
+	}
+
+	/**
+	 * @return how many categories findCategory skipped thanks to the bounds,
+	 *         since creation or the last resetSearchCounters()
+	 */
+	public long getSkippedCategories() {
+		return skippedCategories;
+	}
+
+	/**
+	 * A vigilance reset is a category with the best choice value seen so far
+	 * which fails the vigilance test. The exhaustive search counts the
+	 * classic resets, in decreasing order of T; the pruned and indexed
+	 * searches count the resets among the categories they visit, so their
+	 * counts can be lower.
+	 * @return how many vigilance resets findCategory performed, since
+	 *         creation or the last resetSearchCounters()
+	 */
+	public long getVigilanceResets() {
+		return vigilanceResets;
+	}
+
+	/**
+	 * Sets the scanned and skipped categories and vigilance resets counters
+	 * to 0
+	 */
+	public void resetSearchCounters() {
+		scannedCategories = 0;
+		skippedCategories = 0;
+		vigilanceResets = 0;
+	}
+
+	/**
+	 * Copies the scanned and skipped categories and vigilance resets counters
+	 * of source, so that a clone restored by a rollback keeps the searches
+	 * done since it was taken
+	 * @param source the network whose counters are copied
+	 */
+	void copySearchCounters(FuzzyArt source) {
+		scannedCategories = source.scannedCategories;
+		skippedCategories = source.skippedCategories;
+		vigilanceResets = source.vigilanceResets;
+	}
+
+	/**
+	 * Enables the parallel winner search for large networks: when the network
+	 * has at least threshold categories, the choice values and the search for
+	 * the maximum, including the re-search after a vigilance reset, are split
+	 * over the common fork-join pool. The winner is the same as the one found
+	 * by the sequential search.
+	 * @param threshold the minimum number of categories for the parallel
+	 *            search; Integer.MAX_VALUE (the default) disables it
+	 */
+	public void setParallelSearchThreshold(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException("The threshold should be at least 1");
+		}
+		this.parallelSearchThreshold = threshold;
+	}
+
+	/**
+	 * @return the minimum number of categories for the parallel winner search
+	 */
+	public int getParallelSearchThreshold() {
+		return parallelSearchThreshold;
+	}
+
 	/**
 	 * Add a new category to the network
 	 */
 	public void createNewCategory() {
-		// copy the old values of w into the larger array auxW
-		w.add(normalizedInput.clone());
-		T.add(-1.0);// extend T by one element
-		eligible.add(true);// extend eligible by one element
-
 		/**
-		 * Initialize centroid of new category. Copy the old values of centroids
-		 * into the larger array auxW.
+		 * The weight of the new category is the current input; its centroid is
+		 * the un-normalized input and its size (number of representants) is 1.
 		 */
-		// a new centroid value is added
-		centroids.add(unNormalizedInput.clone());
+		int J = categories.add(normalizedInput, unNormalizedInput);
+		ensureScratchCapacity();
+		T[J] = -1.0;
+		match[J] = categories.norms[J]; // w[J] is the input itself
+		eligible[J] = true;
+		if (index != null) {
+			index.insert(J);
+		}
+	}
 
-		/**
-		 * Initialize category_size (number of representants). The new category
-		 * will have size 1 when created.
-		 */
-		category_size.add(1);
+	/**
+	 * Adds a copy of category j of source, used when networks trained on
+	 * different data are merged
+	 * @param source the categories of another network
+	 * @param j the index of the category in source
+	 * @return the index of the new category
+	 */
+	int addCategory(CategoryStore source, int j) {
+		int J = categories.addCopy(source, j);
+		ensureScratchCapacity();
+		eligible[J] = true;
+		if (index != null) {
+			index.insert(J);
+		}
+		return J;
+	}
+
+	/**
+	 * Merges category j of source into category J, see CategoryStore.merge
+	 * @param J the index of the category which absorbs j
+	 * @param source the categories of another network
+	 * @param j the index of the category in source
+	 */
+	void mergeCategory(int J, CategoryStore source, int j) {
+		categories.merge(J, source, j);
+		if (index != null) {
+			index.update(J);
+		}
+	}
+
+	/**
+	 * Grows T, match and eligible to the capacity of the category store
+	 */
+	private void ensureScratchCapacity() {
+		if (T.length < categories.capacity()) {
+			T = Arrays.copyOf(T, categories.capacity());
+			match = Arrays.copyOf(match, categories.capacity());
+			eligible = Arrays.copyOf(eligible, categories.capacity());
+		}
 	}
 
 	/**
@@ -131,17 +457,18 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 * @param J the index of input category for which learning occurs
 	 */
 	public void learn(int J) {
-		FuzzyVector term1 = (normalizedInput.and(w.get(J))).times(beta);
-		FuzzyVector term2 = w.get(J).times(1 - beta);
-		w.set(J, term1.sum(term2));
+		categories.beforeChange(J);
+		categories.learnWeight(normalizedInput, J, beta);
 
-		category_size.set(J, category_size.get(J) + 1); // increment number of
-														// representants
+		int size = ++categories.category_size[J]; // increment number of
+													// representants
 
 		// update centroid of node J using Kohonen's learning rule
 		// and an the idea of Lim and Harrison
-		FuzzyVector term = (unNormalizedInput.diff(centroids.get(J))).times(1. / category_size.get(J));
-		centroids.set(J, term.sum(centroids.get(J)));
+		categories.learnCentroid(unNormalizedInput, J, size);
+		if (index != null) {
+			index.update(J);
+		}
 	}
 
 	/**
@@ -149,7 +476,43 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 * @param J the index of winning category
 	 */
 	public void increaseRho(int J) {
-		rho = (normalizedInput.and(w.get(J))).norm() / normalizedInput.norm() + DELTA;
+		// match[J] was computed for the current input by findCategory or
+		// createNewCategory; w[J] has not changed since
+		rho = match[J] / inputNorm + DELTA;
+	}
+
+	/**
+	 * Starts recording the changes of the categories, so that they can be
+	 * undone by rollback(). Only the categories that learn and the number of
+	 * categories are recorded, not a copy of the network.
+	 */
+	public void beginTransaction() {
+		markedRho = rho;
+		categories.mark();
+	}
+
+	/**
+	 * Undoes the changes made since beginTransaction(): categories created in
+	 * the meantime are dropped, learned categories and rho are restored.
+	 */
+	public void rollback() {
+		int size = categories.size();
+		categories.rollback();
+		if (index != null) {
+			// restored categories had these boxes and norms before, the index
+			// already covers them
+			for (int j = categories.size(); j < size; j++) {
+				index.remove(j);
+			}
+		}
+		rho = markedRho;
+	}
+
+	/**
+	 * Keeps the changes made since beginTransaction()
+	 */
+	public void commit() {
+		categories.commit();
 	}
 
 	/**
@@ -177,13 +540,18 @@ public class FuzzyArt implements Serializable, Cloneable {
 		 * function is 100% accurate only when FuzzyArt is used as a clustering
 		 * procedure (not in FuzzyArtMap)
 		 */
-		return category_size;
+		List<Integer> result = new ArrayList<Integer>(categories.size());
+		for (int j = 0; j < categories.size(); j++) {
+			result.add(categories.category_size[j]);
+		}
+		return result;
 	}
 
 	/**
-	 * Returns the centroid corresponding to category j
+	 * Returns the centroid corresponding to category j. Earlier versions
+	 * returned zeros here, through FuzzyVector.getValue.
 	 * @param j the index of the category whose centroid is to be returned
-	 * @return the centroid
+	 * @return a copy of the centroid
 	 */
 	public double[] giveCentroid(int j) {
 		/**
@@ -191,7 +559,10 @@ public class FuzzyArt implements Serializable, Cloneable {
 		 * function is 100% accurate only when FuzzyArt is used as a clustering
 		 * procedure (not in FuzzyArtMap)
 		 */
-		return centroids.get(j).getValue();
+		if (j < 0 || j >= categories.size()) {
+			throw new IndexOutOfBoundsException("No category with index " + j);
+		}
+		return categories.getCentroid(j);
 	}
 
 	/**
@@ -199,22 +570,37 @@ public class FuzzyArt implements Serializable, Cloneable {
 	 * @return number of categories
 	 */
 	public int numCategories() {
-		return w.size();
+		return categories.size();
+	}
+
+	/**
+	 * @return the storage of the categories; read-only access for this package
+	 */
+	CategoryStore getCategories() {
+		return categories;
 	}
 
 	/**
 	 * clones the current object
 	 */
 	public FuzzyArt clone() {
-		FuzzyArt result = new FuzzyArt(this.rho_init, this.beta);
-		result.w = Util.copyListOfFuzzyVector(this.w);
+		FuzzyArt result = new FuzzyArt(this.rho_init, this.beta, 0, this.categories.isSinglePrecision());
+		result.categories = this.categories.clone();
 		result.normalizedInput = this.normalizedInput == null ? null : this.normalizedInput.clone();
 		result.unNormalizedInput = this.unNormalizedInput == null ? null : this.unNormalizedInput.clone();
+		result.inputNorm = this.inputNorm;
 		result.rho = this.rho;
-		result.T = Util.copyList(this.T);
-		result.eligible = Util.copyList(this.eligible);
-		result.centroids = Util.copyListOfFuzzyVector(this.centroids);
-		result.category_size = Util.copyList(this.category_size); // number of representants per category
+		result.parallelSearchThreshold = this.parallelSearchThreshold;
+		result.pruning = this.pruning;
+		result.spatialIndex = this.spatialIndex;
+		// the tree is copied, not rebuilt, so that clone rollback stays cheap
+		result.index = this.index == null ? null : this.index.copy(result.categories);
+		result.scannedCategories = this.scannedCategories;
+		result.skippedCategories = this.skippedCategories;
+		result.vigilanceResets = this.vigilanceResets;
+		result.T = Arrays.copyOf(this.T, this.T.length);
+		result.match = Arrays.copyOf(this.match, this.match.length);
+		result.eligible = Arrays.copyOf(this.eligible, this.eligible.length);
 		
 		return result;
 	}
@@ -56,10 +56,7 @@ public class FuzzyVector implements Serializable, Cloneable
 			throw new RuntimeException("Size mismatch in 'and' method");
 		}
 		FuzzyVector result = new FuzzyVector( length );
-		for( int i=0; i<length; i++)
-		{
-		    result.v[i] = Math.min( v[i], b.v[i] );
-		}
+		Kernels.min( v, b.v, result.v, length );
 		return result;
 	}
 
@@ -130,12 +127,7 @@ public class FuzzyVector implements Serializable, Cloneable
 		{
 		    throw new RuntimeException("size mismatch in 'prod' method");
 	    }
-	    double prod = 0;
-	    for( int i=0; i<length; i++)
-	    {
-		    prod += v[i] * b.v[i];
-	    }
-	    return prod;
+	    return Kernels.prod( v, b.v, length );
 	}
 
 	/**
@@ -233,12 +225,7 @@ public class FuzzyVector implements Serializable, Cloneable
 	 */
 	public double norm()
 	{
-	    double sum = 0.0;
-	    for ( int i=0; i<length; i++)
-	    {
-			sum += Math.abs( v[i] );
-		}
-		return sum;
+	    return Kernels.absSum( v, length );
 	}
 
 	/**
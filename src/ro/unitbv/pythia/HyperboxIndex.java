@@ -0,0 +1,485 @@
+package ro.unitbv.pythia;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * R-tree over the hyperboxes of the FuzzyArt categories. With complement
+ * coding, w[j] = (u, 1 - v) describes the box [u, v], and for an input x
+ * |I and w[j]| = |w[j]| - d(x, [u, v]), where d is the L1 distance from x to
+ * the box (0 inside the box). A node stores the bounding box of its subtree
+ * and the maximum norm of its categories, which bound the choice value and
+ * the match value of every category below it. The search visits the nodes
+ * best bound first and stops when no remaining node can beat the best
+ * category found so far.
+ *
+ * The tree only grows: learning enlarges a box and lowers its norm, so the
+ * bounding boxes are enlarged up to the root; categories dropped by a rollback
+ * are removed from their leaf, without shrinking the bounding boxes. A
+ * rollback restores smaller boxes and larger norms that the tree has already
+ * seen. Stale boxes and norms are larger than the real ones, so the bounds
+ * stay valid.
+ */
+final class HyperboxIndex {
+
+	private static final int MAX_ENTRIES = 16;
+	// relative slack on the bounds, covering rounding errors
+	private static final double BOUND_SLACK = 1 + 1e-9;
+	private static final double ABSOLUTE_SLACK = 1e-12;
+
+	private final CategoryStore categories;
+	private final int dim;
+	private Node root;
+	private Node leafOf[]; // leafOf[j] is the leaf holding category j
+	// reusable best-first queue
+	private Node queue[] = new Node[16];
+	private double queueBound[] = new double[16];
+	private int queueSize = 0;
+	private int scanned = 0;
+	private int resets = 0; // categories rejected by the vigilance test in the last search
+	// box of the category being inserted or updated
+	private final double lower[];
+	private final double upper[];
+
+	/**
+	 * Tree node; a leaf holds category indices, an inner node holds children
+	 */
+	private static final class Node {
+		final boolean leaf;
+		Node parent = null;
+		int count = 0;
+		final int entries[]; // leaf: category indices
+		final Node children[]; // inner node
+		final double lower[]; // bounding box of the subtree
+		final double upper[];
+		double maxNorm = Double.NEGATIVE_INFINITY;
+
+		Node(boolean leaf, int dim) {
+			this.leaf = leaf;
+			this.entries = leaf ? new int[MAX_ENTRIES + 1] : null;
+			this.children = leaf ? null : new Node[MAX_ENTRIES + 1];
+			this.lower = new double[dim];
+			this.upper = new double[dim];
+			Arrays.fill(lower, Double.POSITIVE_INFINITY);
+			Arrays.fill(upper, Double.NEGATIVE_INFINITY);
+		}
+	}
+
+	/**
+	 * Builds the index over the current categories
+	 *
+	 * @param categories
+	 *            the indexed categories
+	 */
+	HyperboxIndex(CategoryStore categories) {
+		this.categories = categories;
+		this.dim = categories.inputDim();
+		this.root = new Node(true, dim);
+		this.lower = new double[dim];
+		this.upper = new double[dim];
+		this.leafOf = new Node[Math.max(categories.capacity(), 16)];
+		for (int j = 0; j < categories.size(); j++) {
+			insert(j);
+		}
+	}
+
+	/**
+	 * Copies the tree of source, over a copy of its categories
+	 */
+	private HyperboxIndex(HyperboxIndex source, CategoryStore categories) {
+		this.categories = categories;
+		this.dim = source.dim;
+		this.lower = new double[dim];
+		this.upper = new double[dim];
+		this.leafOf = new Node[source.leafOf.length];
+		this.root = copy(source.root, null);
+	}
+
+	/**
+	 * Copies the index in O(n), without rebuilding the tree
+	 *
+	 * @param categories
+	 *            a clone of the indexed categories
+	 * @return an index over categories, with the same tree as this one
+	 */
+	HyperboxIndex copy(CategoryStore categories) {
+		return new HyperboxIndex(this, categories);
+	}
+
+	private Node copy(Node node, Node parent) {
+		Node result = new Node(node.leaf, dim);
+		result.parent = parent;
+		result.count = node.count;
+		result.maxNorm = node.maxNorm;
+		System.arraycopy(node.lower, 0, result.lower, 0, dim);
+		System.arraycopy(node.upper, 0, result.upper, 0, dim);
+		for (int k = 0; k < node.count; k++) {
+			if (node.leaf) {
+				int j = node.entries[k];
+				result.entries[k] = j;
+				leafOf[j] = result;
+			} else {
+				result.children[k] = copy(node.children[k], result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds category j
+	 *
+	 * @param j
+	 *            the index of a new category
+	 */
+	void insert(int j) {
+		if (j >= leafOf.length) {
+			leafOf = Arrays.copyOf(leafOf, Math.max(j + 1, 2 * leafOf.length));
+		}
+		Node node = root;
+		while (!node.leaf) {
+			node = chooseChild(node, j);
+		}
+		node.entries[node.count++] = j;
+		leafOf[j] = node;
+		enlarge(node, j);
+		if (node.count > MAX_ENTRIES) {
+			split(node);
+		}
+	}
+
+	/**
+	 * Takes into account a change of category j: its box may have grown, its
+	 * norm may have changed
+	 *
+	 * @param j
+	 *            the index of a changed category
+	 */
+	void update(int j) {
+		enlarge(leafOf[j], j);
+	}
+
+	/**
+	 * Removes category j from its leaf
+	 *
+	 * @param j
+	 *            the index of a dropped category
+	 */
+	void remove(int j) {
+		Node leaf = leafOf[j];
+		for (int k = 0; k < leaf.count; k++) {
+			if (leaf.entries[k] == j) {
+				leaf.entries[k] = leaf.entries[--leaf.count];
+				break;
+			}
+		}
+		leafOf[j] = null;
+	}
+
+	/**
+	 * Finds the eligible category with maximum T which passes the vigilance
+	 * test; ties go to the lowest index. match[j] and T[j] are filled in for
+	 * the visited categories.
+	 *
+	 * @param x
+	 *            the un-normalized input
+	 * @param I
+	 *            the complement-coded input
+	 * @param inputNorm
+	 *            |I|
+	 * @param threshold
+	 *            rho * |I|
+	 * @param alpha
+	 *            the choice parameter
+	 * @return the index of the winner; -1 if there is none
+	 */
+	int search(double[] x, double[] I, double inputNorm, double threshold, double alpha, boolean[] eligible,
+			double[] match, double[] T) {
+		int J = -1;
+		double TMax = -1;
+		scanned = 0;
+		resets = 0;
+		queueSize = 0;
+		double rootBound = bound(root, x, inputNorm, threshold, alpha);
+		if (rootBound >= 0) {
+			push(root, rootBound);
+		}
+		while (queueSize > 0) {
+			double bound = queueBound[0];
+			Node node = poll();
+			if (bound < TMax) {
+				break; // no remaining node can win
+			}
+			if (node.leaf) {
+				for (int k = 0; k < node.count; k++) {
+					int j = node.entries[k];
+					if (!eligible[j]) {
+						continue;
+					}
+					scanned++;
+					match[j] = categories.match(I, j);
+					T[j] = match[j] / (alpha + categories.norms[j]);
+					if (match[j] >= threshold && (T[j] > TMax || (T[j] == TMax && j < J))) {
+						J = j;
+						TMax = T[j];
+					} else if (match[j] < threshold && T[j] > TMax) {
+						resets++;
+					}
+				}
+			} else {
+				for (int k = 0; k < node.count; k++) {
+					double childBound = bound(node.children[k], x, inputNorm, threshold, alpha);
+					if (childBound >= 0 && childBound >= TMax) {
+						push(node.children[k], childBound);
+					}
+				}
+			}
+		}
+		return J;
+	}
+
+	/**
+	 * @return the number of categories whose match was computed by the last
+	 *         search
+	 */
+	int lastScanned() {
+		return scanned;
+	}
+
+	/**
+	 * @return the number of categories rejected by the vigilance test in the
+	 *         last search, see FuzzyArt.getVigilanceResets()
+	 */
+	int lastResets() {
+		return resets;
+	}
+
+	/**
+	 * Upper bound of T for the categories under node; -1 if none of them can
+	 * pass the vigilance test
+	 */
+	private double bound(Node node, double[] x, double inputNorm, double threshold, double alpha) {
+		if (node.count == 0) {
+			return -1;
+		}
+		double distance = 0;
+		for (int i = 0; i < dim; i++) {
+			if (x[i] < node.lower[i]) {
+				distance += node.lower[i] - x[i];
+			} else if (x[i] > node.upper[i]) {
+				distance += x[i] - node.upper[i];
+			}
+		}
+		if ((node.maxNorm - distance) * BOUND_SLACK + ABSOLUTE_SLACK < threshold) {
+			return -1;
+		}
+		// min(n - d, |I|) / (alpha + n) is largest for n = |I| + d
+		double n = Math.min(node.maxNorm, inputNorm + distance);
+		return Math.max(0, (n - distance) / (alpha + n)) * BOUND_SLACK + ABSOLUTE_SLACK;
+	}
+
+	/**
+	 * Enlarges the boxes and the norms from node up to the root to cover
+	 * category j
+	 */
+	private void enlarge(Node node, int j) {
+		double norm = categories.norms[j];
+		for (int i = 0; i < dim; i++) {
+			lower[i] = categories.weightAt(j, i);
+			upper[i] = 1 - categories.weightAt(j, dim + i);
+		}
+		for (; node != null; node = node.parent) {
+			boolean changed = false;
+			for (int i = 0; i < dim; i++) {
+				if (lower[i] < node.lower[i]) {
+					node.lower[i] = lower[i];
+					changed = true;
+				}
+				if (upper[i] > node.upper[i]) {
+					node.upper[i] = upper[i];
+					changed = true;
+				}
+			}
+			if (norm > node.maxNorm) {
+				node.maxNorm = norm;
+				changed = true;
+			}
+			if (!changed) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Picks the child of node whose box grows least (in L1 margin) when
+	 * category j is added
+	 */
+	private Node chooseChild(Node node, int j) {
+		Node best = null;
+		double bestGrowth = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < node.count; k++) {
+			Node child = node.children[k];
+			double growth = 0;
+			for (int i = 0; i < dim; i++) {
+				double u = categories.weightAt(j, i);
+				double v = 1 - categories.weightAt(j, dim + i);
+				growth += Math.max(0, child.lower[i] - u) + Math.max(0, v - child.upper[i]);
+			}
+			if (growth < bestGrowth) {
+				best = child;
+				bestGrowth = growth;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Splits an overfull node in two halves, along the dimension on which the
+	 * centers of its entries are most spread
+	 */
+	private void split(Node node) {
+		int n = node.count;
+		final double centers[][] = new double[n][dim];
+		for (int k = 0; k < n; k++) {
+			if (node.leaf) {
+				int j = node.entries[k];
+				for (int i = 0; i < dim; i++) {
+					centers[k][i] = (categories.weightAt(j, i) + 1 - categories.weightAt(j, dim + i)) / 2;
+				}
+			} else {
+				Node child = node.children[k];
+				for (int i = 0; i < dim; i++) {
+					centers[k][i] = (child.lower[i] + child.upper[i]) / 2;
+				}
+			}
+		}
+		int axis = 0;
+		double widest = -1;
+		for (int i = 0; i < dim; i++) {
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int k = 0; k < n; k++) {
+				min = Math.min(min, centers[k][i]);
+				max = Math.max(max, centers[k][i]);
+			}
+			if (max - min > widest) {
+				widest = max - min;
+				axis = i;
+			}
+		}
+		Integer order[] = new Integer[n];
+		for (int k = 0; k < n; k++) {
+			order[k] = k;
+		}
+		final int sortAxis = axis;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(centers[a][sortAxis], centers[b][sortAxis]);
+			}
+		});
+
+		Node left = new Node(node.leaf, dim);
+		Node right = new Node(node.leaf, dim);
+		for (int k = 0; k < n; k++) {
+			add(k < n / 2 ? left : right, node, order[k]);
+		}
+
+		Node parent = node.parent;
+		if (parent == null) {
+			parent = new Node(false, dim);
+			root = parent;
+		} else {
+			for (int k = 0; k < parent.count; k++) {
+				if (parent.children[k] == node) {
+					parent.children[k] = parent.children[--parent.count];
+					break;
+				}
+			}
+		}
+		attach(parent, left);
+		attach(parent, right);
+		if (parent.count > MAX_ENTRIES) {
+			split(parent);
+		}
+	}
+
+	/**
+	 * Moves entry k of from into to
+	 */
+	private void add(Node to, Node from, int k) {
+		if (to.leaf) {
+			int j = from.entries[k];
+			to.entries[to.count++] = j;
+			leafOf[j] = to;
+			enlarge(to, j);
+		} else {
+			Node child = from.children[k];
+			to.children[to.count++] = child;
+			child.parent = to;
+			cover(to, child);
+		}
+	}
+
+	private void attach(Node parent, Node child) {
+		parent.children[parent.count++] = child;
+		child.parent = parent;
+		for (Node node = parent; node != null; node = node.parent) {
+			cover(node, child);
+		}
+	}
+
+	/**
+	 * Enlarges the box and the norm of node to cover child
+	 */
+	private static void cover(Node node, Node child) {
+		for (int i = 0; i < node.lower.length; i++) {
+			node.lower[i] = Math.min(node.lower[i], child.lower[i]);
+			node.upper[i] = Math.max(node.upper[i], child.upper[i]);
+		}
+		node.maxNorm = Math.max(node.maxNorm, child.maxNorm);
+	}
+
+	private void push(Node node, double bound) {
+		if (queueSize == queue.length) {
+			queue = Arrays.copyOf(queue, 2 * queueSize);
+			queueBound = Arrays.copyOf(queueBound, 2 * queueSize);
+		}
+		int i = queueSize++;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (queueBound[parent] >= bound) {
+				break;
+			}
+			queue[i] = queue[parent];
+			queueBound[i] = queueBound[parent];
+			i = parent;
+		}
+		queue[i] = node;
+		queueBound[i] = bound;
+	}
+
+	private Node poll() {
+		Node result = queue[0];
+		Node last = queue[--queueSize];
+		double lastBound = queueBound[queueSize];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= queueSize) {
+				break;
+			}
+			if (child + 1 < queueSize && queueBound[child + 1] > queueBound[child]) {
+				child++;
+			}
+			if (queueBound[child] <= lastBound) {
+				break;
+			}
+			queue[i] = queue[child];
+			queueBound[i] = queueBound[child];
+			i = child;
+		}
+		queue[i] = last;
+		queueBound[i] = lastBound;
+		return result;
+	}
+}
@@ -0,0 +1,168 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * k-fold cross-validation of FAMR configurations, see Hyperparameters.grid
+ * and Hyperparameters.random. The patterns are scaled, complement coded and
+ * split in folds once, when the search is created; every task reads the same
+ * arrays. Each (configuration, fold) pair is one fork-join task, which trains
+ * a new FAMR on the other folds and tests it on the fold, so the work is
+ * balanced by work stealing however long the configurations take.
+ */
+public final class HyperparameterSearch {
+
+	private final CodedPatterns coded;
+	private final double iMin;
+	private final double iMax;
+	private final int outputDim;
+	private final int trainOrders[][]; // per fold, the training patterns, in presentation order
+	private final int testSets[][]; // per fold, the held-out patterns
+
+	/**
+	 * @param patterns
+	 *            the dataset, for classification; the inputs are scaled in
+	 *            place
+	 * @param iMin
+	 *            minimum input value
+	 * @param iMax
+	 *            maximum input value
+	 * @param outputDim
+	 *            number of classes
+	 * @param folds
+	 *            the number of folds, at least 2
+	 * @param seed
+	 *            seed of the shuffle which assigns the patterns to folds; the
+	 *            training patterns are presented in the shuffled order
+	 */
+	public HyperparameterSearch(List<Pattern> patterns, double iMin, double iMax, int outputDim, int folds,
+			long seed) {
+		if (folds < 2 || folds > patterns.size()) {
+			throw new IllegalArgumentException("The number of folds should be between 2 and the number of patterns");
+		}
+		this.coded = new CodedPatterns(patterns, iMin, iMax);
+		this.iMin = iMin;
+		this.iMax = iMax;
+		this.outputDim = outputDim;
+
+		int n = coded.size();
+		int order[] = Util.permutation(n, seed);
+		trainOrders = new int[folds][];
+		testSets = new int[folds][];
+		for (int f = 0; f < folds; f++) {
+			int testSize = (n - f + folds - 1) / folds; // positions f, f + folds, ...
+			testSets[f] = new int[testSize];
+			trainOrders[f] = new int[n - testSize];
+			int test = 0;
+			int train = 0;
+			for (int p = 0; p < n; p++) {
+				if (p % folds == f) {
+					testSets[f][test++] = order[p];
+				} else {
+					trainOrders[f][train++] = order[p];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Cross-validates the configurations on the common fork-join pool
+	 *
+	 * @param configurations
+	 *            the configurations to evaluate
+	 * @return one result per configuration, in the same order
+	 */
+	public List<CrossValidationResult> evaluate(List<Hyperparameters> configurations) {
+		return evaluate(configurations, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Cross-validates the configurations on the given pool
+	 *
+	 * @param configurations
+	 *            the configurations to evaluate
+	 * @param pool
+	 *            the pool running the (configuration, fold) tasks
+	 * @return one result per configuration, in the same order
+	 */
+	public List<CrossValidationResult> evaluate(List<Hyperparameters> configurations, ForkJoinPool pool) {
+		int folds = testSets.length;
+		List<CrossValidationResult> results = new ArrayList<CrossValidationResult>(configurations.size());
+		final List<FoldTask> tasks = new ArrayList<FoldTask>(configurations.size() * folds);
+		for (Hyperparameters configuration : configurations) {
+			CrossValidationResult result = new CrossValidationResult(configuration, folds);
+			results.add(result);
+			for (int f = 0; f < folds; f++) {
+				tasks.add(new FoldTask(result, f));
+			}
+		}
+		pool.invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(tasks);
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * @param results
+	 *            results returned by evaluate
+	 * @return the result with the highest accuracy; ties go to the fewest
+	 *         categories, then to the first result
+	 */
+	public static CrossValidationResult best(List<CrossValidationResult> results) {
+		CrossValidationResult best = null;
+		for (CrossValidationResult result : results) {
+			if (best == null || result.getAccuracy() > best.getAccuracy()
+					|| (result.getAccuracy() == best.getAccuracy() && result.getCategories() < best.getCategories())) {
+				best = result;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Trains one configuration on all folds but one and tests it on that fold
+	 */
+	private final class FoldTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final CrossValidationResult result;
+		private final int fold;
+
+		FoldTask(CrossValidationResult result, int fold) {
+			this.result = result;
+			this.fold = fold;
+		}
+
+		@Override
+		protected void compute() {
+			long start = System.nanoTime();
+			Hyperparameters h = result.getHyperparameters();
+			FAMR famr = new FAMR(h.getRho_init_a(), h.getBeta_a(), h.getRho_ab(), h.getEpochs(), iMin, iMax,
+					outputDim);
+			famr.trainCoded(coded, trainOrders[fold]);
+			int correctlyClassified = 0;
+			for (int t : testSets[fold]) {
+				if (famr.classifyCoded(coded.coded[t], coded.norms[t]) == coded.classes[t]) {
+					correctlyClassified++;
+				}
+			}
+			result.set(fold, (double) correctlyClassified / testSets[fold].length, famr.getInputCategoriesNo(),
+					System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * @return the number of folds
+	 */
+	public int getFolds() {
+		return testSets.length;
+	}
+}
@@ -0,0 +1,129 @@
+package ro.unitbv.pythia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One FAMR configuration tried by HyperparameterSearch: the hyperparameters
+ * which change the trained network. Instances never change.
+ */
+public final class Hyperparameters {
+
+	private final double rho_init_a;
+	private final double beta_a;
+	private final double rho_ab;
+	private final int epochs;
+
+	/**
+	 * @param rho_init_a
+	 *            baseline vigilance parameter
+	 * @param beta_a
+	 *            used for category learning
+	 * @param rho_ab
+	 *            mapfield threshold
+	 * @param epochs
+	 *            how many iterations over the training set
+	 */
+	public Hyperparameters(double rho_init_a, double beta_a, double rho_ab, int epochs) {
+		this.rho_init_a = rho_init_a;
+		this.beta_a = beta_a;
+		this.rho_ab = rho_ab;
+		this.epochs = epochs;
+	}
+
+	/**
+	 * Builds the full grid of configurations, rho_init_a varying slowest
+	 *
+	 * @param rho_init_a
+	 *            the baseline vigilance values
+	 * @param beta_a
+	 *            the learning rate values
+	 * @param rho_ab
+	 *            the mapfield threshold values
+	 * @param epochs
+	 *            the epoch counts
+	 * @return every combination of the given values
+	 */
+	public static List<Hyperparameters> grid(double[] rho_init_a, double[] beta_a, double[] rho_ab, int[] epochs) {
+		List<Hyperparameters> result = new ArrayList<Hyperparameters>(
+				rho_init_a.length * beta_a.length * rho_ab.length * epochs.length);
+		for (double rho : rho_init_a) {
+			for (double beta : beta_a) {
+				for (double rhoAb : rho_ab) {
+					for (int e : epochs) {
+						result.add(new Hyperparameters(rho, beta, rhoAb, e));
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Draws configurations uniformly from the given ranges
+	 *
+	 * @param budget
+	 *            the number of configurations
+	 * @param rho_init_a
+	 *            the range of the baseline vigilance, {min, max}
+	 * @param beta_a
+	 *            the range of the learning rate, {min, max}
+	 * @param rho_ab
+	 *            the range of the mapfield threshold, {min, max}
+	 * @param epochs
+	 *            the range of the epoch count, {min, max}, both included
+	 * @param seed
+	 *            seed of the random draws
+	 * @return budget configurations
+	 */
+	public static List<Hyperparameters> random(int budget, double[] rho_init_a, double[] beta_a, double[] rho_ab,
+			int[] epochs, long seed) {
+		Random random = new Random(seed);
+		List<Hyperparameters> result = new ArrayList<Hyperparameters>(budget);
+		for (int i = 0; i < budget; i++) {
+			result.add(new Hyperparameters(draw(random, rho_init_a), draw(random, beta_a), draw(random, rho_ab),
+					epochs[0] + random.nextInt(epochs[1] - epochs[0] + 1)));
+		}
+		return result;
+	}
+
+	private static double draw(Random random, double[] range) {
+		return range[0] + random.nextDouble() * (range[1] - range[0]);
+	}
+
+	/**
+	 * @return the baseline vigilance
+	 */
+	public double getRho_init_a() {
+		return rho_init_a;
+	}
+
+	/**
+	 * @return the learning rate of art_a
+	 */
+	public double getBeta_a() {
+		return beta_a;
+	}
+
+	/**
+	 * @return the mapfield threshold
+	 */
+	public double getRho_ab() {
+		return rho_ab;
+	}
+
+	/**
+	 * @return the number of training epochs
+	 */
+	public int getEpochs() {
+		return epochs;
+	}
+
+	/**
+	 * Human readable configuration
+	 */
+	public String toString() {
+		return "rho_init_a= " + rho_init_a + "; beta_a= " + beta_a + "; rho_ab= " + rho_ab + "; epochs= " + epochs;
+	}
+}
@@ -0,0 +1,82 @@
+package ro.unitbv.pythia;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Implementation of the element-wise kernels behind Kernels. The scalar
+ * implementation runs everywhere; on Java 17 and later, a SIMD
+ * implementation based on jdk.incubator.vector is used when that module is
+ * available.
+ */
+interface KernelSet {
+
+	/**
+	 * @return sum of min(x[i], w[offset + i]), for i in [0, length)
+	 */
+	double minSum(double[] x, double[] w, int offset, int length);
+
+	/**
+	 * @return sum of w[offset + i], for i in [0, length)
+	 */
+	double sum(double[] w, int offset, int length);
+
+	/**
+	 * Applies w = beta * (x and w) + (1 - beta) * w in place, on the row
+	 * starting at offset
+	 * 
+	 * @return the L1 norm of the updated row
+	 */
+	double learn(double[] x, double[] w, int offset, int length, double beta);
+
+	/**
+	 * Writes min(a[i], b[i]) into result[i], for i in [0, length)
+	 */
+	void min(double[] a, double[] b, double[] result, int length);
+
+	/**
+	 * @return sum of |v[i]|, for i in [0, length)
+	 */
+	double absSum(double[] v, int length);
+
+	/**
+	 * @return sum of a[i] * b[i], for i in [0, length)
+	 */
+	double prod(double[] a, double[] b, int length);
+
+	/**
+	 * Applies w[offset + i] += rate * ((i == k ? 1 : 0) - w[offset + i]), for
+	 * i in [0, length); must give exactly the scalar values
+	 */
+	void moveTowards(double[] w, int offset, int length, int k, double rate);
+
+	/**
+	 * Single precision row: sum of min(x[i], w[offset + i]), in double
+	 */
+	double minSum(double[] x, float[] w, int offset, int length);
+
+	/**
+	 * Single precision row: sum of w[offset + i], in double
+	 */
+	double sum(float[] w, int offset, int length);
+
+	/**
+	 * Single precision row: the learning rule is computed in double and the
+	 * result is rounded to float
+	 * 
+	 * @return the L1 norm of the updated (rounded) row
+	 */
+	double learn(double[] x, float[] w, int offset, int length, double beta);
+
+	/**
+	 * Row of a mapped buffer: sum of min(x[i], w.get(offset + i)), read with
+	 * absolute gets, so the position of w is not used
+	 */
+	double minSum(double[] x, DoubleBuffer w, int offset, int length);
+
+	/**
+	 * Single precision row of a mapped buffer: sum of min(x[i], w.get(offset +
+	 * i)), in double
+	 */
+	double minSum(double[] x, FloatBuffer w, int offset, int length);
+}
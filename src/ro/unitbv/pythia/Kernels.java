@@ -0,0 +1,210 @@
+package ro.unitbv.pythia;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Element-wise kernels shared by FuzzyArt and FuzzyVector. They work directly
+ * on primitive arrays, at a given row offset, and never allocate.
+ *
+ * The implementation is chosen once, when this class is loaded, from the
+ * system property ro.unitbv.pythia.kernels:
+ * "scalar" (the default) uses the plain Java loops; "vector" requires the
+ * SIMD kernels; "auto" uses the SIMD kernels when they can be loaded, i.e. on
+ * Java 17+ from the multi-release jar with --add-modules jdk.incubator.vector,
+ * and the scalar loops otherwise.
+ *
+ * The SIMD kernels are opt-in because their sums are accumulated lane-wise:
+ * they round differently from the scalar loops, so a network trained with
+ * them may get different categories and labels than with the scalar
+ * kernels, for the same data and seed.
+ */
+final class Kernels {
+
+	static final String PROPERTY = "ro.unitbv.pythia.kernels";
+	private static final String VECTOR_KERNELS = "ro.unitbv.pythia.VectorKernels";
+	private static final KernelSet IMPL = select(System.getProperty(PROPERTY, "scalar"));
+
+	private Kernels() {
+	}
+
+	/**
+	 * @param choice
+	 *            "scalar", "vector" or "auto"
+	 * @return the kernel implementation
+	 */
+	private static KernelSet select(String choice) {
+		if ("scalar".equals(choice)) {
+			return new ScalarKernels();
+		}
+		try {
+			return (KernelSet) Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+		} catch (Throwable e) {
+			// Java 8, plain classes directory, or jdk.incubator.vector not added
+			if ("vector".equals(choice)) {
+				throw new IllegalStateException("SIMD kernels requested, but they cannot be loaded", e);
+			}
+			return new ScalarKernels();
+		}
+	}
+
+	/**
+	 * @return the name of the kernel implementation in use
+	 */
+	static String implementation() {
+		return IMPL.getClass().getSimpleName();
+	}
+
+	/**
+	 * Computes |x and w[offset..offset+length)|, i.e. the L1 norm of the fuzzy
+	 * and between x and a row of a weight matrix
+	 *
+	 * @param x
+	 *            the first operand, of at least length items
+	 * @param w
+	 *            the array holding the second operand
+	 * @param offset
+	 *            where the second operand starts in w
+	 * @param length
+	 *            the number of items
+	 * @return sum of min(x[i], w[offset + i])
+	 */
+	static double minSum(double[] x, double[] w, int offset, int length) {
+		return IMPL.minSum(x, w, offset, length);
+	}
+
+	/**
+	 * Computes the sum of w[offset..offset+length)
+	 *
+	 * @param w
+	 *            the array holding the values
+	 * @param offset
+	 *            the first summed position
+	 * @param length
+	 *            the number of items
+	 * @return the sum of the items
+	 */
+	static double sum(double[] w, int offset, int length) {
+		return IMPL.sum(w, offset, length);
+	}
+
+	/**
+	 * Fuzzy ART learning rule applied in place:
+	 * w = beta * (x and w) + (1 - beta) * w
+	 *
+	 * @param x
+	 *            the complement-coded input
+	 * @param w
+	 *            the array holding the weight row
+	 * @param offset
+	 *            where the weight row starts in w
+	 * @param length
+	 *            the length of the row
+	 * @param beta
+	 *            the learning rate
+	 * @return the L1 norm of the updated row
+	 */
+	static double learn(double[] x, double[] w, int offset, int length, double beta) {
+		return IMPL.learn(x, w, offset, length, beta);
+	}
+
+	/**
+	 * Moves a mapfield row towards the one-hot vector of class k:
+	 * w[offset + i] += rate * ((i == k ? 1 : 0) - w[offset + i]). Every item
+	 * is updated on its own, so all implementations give the same values.
+	 *
+	 * @param w
+	 *            the array holding the row
+	 * @param offset
+	 *            where the row starts in w
+	 * @param length
+	 *            the number of items
+	 * @param k
+	 *            the position of the learned class in the row
+	 * @param rate
+	 *            the learning rate
+	 */
+	static void moveTowards(double[] w, int offset, int length, int k, double rate) {
+		IMPL.moveTowards(w, offset, length, k, rate);
+	}
+
+	/**
+	 * Same as minSum, for a single precision row; accumulates in double
+	 */
+	static double minSum(double[] x, float[] w, int offset, int length) {
+		return IMPL.minSum(x, w, offset, length);
+	}
+
+	/**
+	 * Same as sum, for a single precision row; accumulates in double
+	 */
+	static double sum(float[] w, int offset, int length) {
+		return IMPL.sum(w, offset, length);
+	}
+
+	/**
+	 * Same as learn, for a single precision row: the rule is computed in
+	 * double and the new values are rounded to float
+	 *
+	 * @return the L1 norm of the updated row
+	 */
+	static double learn(double[] x, float[] w, int offset, int length, double beta) {
+		return IMPL.learn(x, w, offset, length, beta);
+	}
+
+	/**
+	 * Same as minSum, for a row of a memory-mapped buffer; the values are read
+	 * in place with absolute gets
+	 */
+	static double minSum(double[] x, DoubleBuffer w, int offset, int length) {
+		return IMPL.minSum(x, w, offset, length);
+	}
+
+	/**
+	 * Same as minSum, for a single precision row of a memory-mapped buffer;
+	 * accumulates in double
+	 */
+	static double minSum(double[] x, FloatBuffer w, int offset, int length) {
+		return IMPL.minSum(x, w, offset, length);
+	}
+
+	/**
+	 * Fuzzy and of a and b, written into result
+	 *
+	 * @param a
+	 *            the first operand
+	 * @param b
+	 *            the second operand
+	 * @param result
+	 *            receives min(a[i], b[i])
+	 * @param length
+	 *            the number of items
+	 */
+	static void min(double[] a, double[] b, double[] result, int length) {
+		IMPL.min(a, b, result, length);
+	}
+
+	/**
+	 * @param v
+	 *            the vector
+	 * @param length
+	 *            the number of items
+	 * @return the L1 norm of v
+	 */
+	static double absSum(double[] v, int length) {
+		return IMPL.absSum(v, length);
+	}
+
+	/**
+	 * @param a
+	 *            the first operand
+	 * @param b
+	 *            the second operand
+	 * @param length
+	 *            the number of items
+	 * @return the scalar product of a and b
+	 */
+	static double prod(double[] a, double[] b, int length) {
+		return IMPL.prod(a, b, length);
+	}
+}
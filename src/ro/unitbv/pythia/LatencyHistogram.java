@@ -0,0 +1,79 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with one bucket per power
+ * of 2: bucket b counts the durations in [2^(b-1), 2^b). Recording costs a
+ * few atomic additions; the percentiles are the upper bounds of the buckets,
+ * so they are exact within a factor of 2.
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+
+	/**
+	 * @param nanos
+	 *            a duration, negative values count as 0
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos)));
+		count.increment();
+		sum.add(nanos);
+	}
+
+	/**
+	 * @return the number of recorded durations
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * @return the mean duration; 0 if none was recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * @param quantile
+	 *            in [0, 1], e.g. 0.99
+	 * @return an upper bound of the given quantile, within a factor of 2; 0 if
+	 *         no duration was recorded
+	 */
+	public long getPercentile(double quantile) {
+		long total = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			total += buckets.get(b);
+		}
+		long rank = (long) Math.ceil(quantile * total);
+		long seen = 0;
+		for (int b = 0; b < BUCKETS; b++) {
+			seen += buckets.get(b);
+			if (seen >= rank && seen > 0) {
+				return b == 0 ? 0 : (b >= 63 ? Long.MAX_VALUE : (1L << b) - 1);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Forgets every recorded duration
+	 */
+	public void reset() {
+		for (int b = 0; b < BUCKETS; b++) {
+			buckets.set(b, 0);
+		}
+		count.reset();
+		sum.reset();
+	}
+}
@@ -6,33 +6,71 @@ package ro.unitbv.pythia;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Debug output, written only if Settings.debugMode is set. The calling
+ * threads never do I/O: the messages go to a bounded ring buffer which a
+ * single background thread drains in batches, writing to the files in the
+ * user's home directory (or to stderr) and flushing after each batch. The
+ * writer thread is started by the first message.
+ *
+ * The buffer size, the sampling of the classified patterns and the policy
+ * when the buffer is full are read from the system properties
+ * ro.unitbv.pythia.log.capacity (default 8192 messages),
+ * ro.unitbv.pythia.log.sampling (default 1, every pattern) and
+ * ro.unitbv.pythia.log.policy (DROP, the default, or BLOCK); the last two can
+ * also be changed at run time.
+ *
  * @author ro1v0393
  *
  */
 public class Logger {
 
+	static final String PROPERTY_PREFIX = "ro.unitbv.pythia.log.";
+	private static final int DEFAULT_CAPACITY = 8192;
+	// longest wait of flush(), and of a blocked caller between two checks
+	// that the writer thread is still running
+	private static final long FLUSH_TIMEOUT_MILLIS = 10000;
+	private static final long BLOCK_CHECK_MILLIS = 100;
+
+	/**
+	 * What a caller does when the buffer is full
+	 */
+	public enum OverflowPolicy {
+		/** the message is discarded and counted, see getDroppedMessages() */
+		DROP,
+		/** the caller waits for room in the buffer */
+		BLOCK
+	}
+
+	private static volatile int sampling = Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "sampling", 1));
+	private static volatile OverflowPolicy policy = OverflowPolicy
+			.valueOf(System.getProperty(PROPERTY_PREFIX + "policy", OverflowPolicy.DROP.name()));
+	private static final AtomicLong sampled = new AtomicLong();
+	private static final AtomicLong dropped = new AtomicLong();
+	private static volatile boolean started = false; // set by the Appender, without loading it
+
 	public static void debug_print(String filename, Pattern pattern) {
 		if (Settings.debugMode == false)
 		{
 			return;
 		}
-		String path = getUserHomePath();
-		String fullPath = path + filename + ".debug.txt";
-		try(FileWriter fw = new FileWriter(fullPath, true);
-			    BufferedWriter bw = new BufferedWriter(fw);
-			    PrintWriter out = new PrintWriter(bw))
-			{
-			    out.println(pattern.toString_scaled());
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
+		int n = sampling;
+		if (n > 1 && sampled.getAndIncrement() % n != 0) {
+			return;
+		}
+		Appender.INSTANCE.enqueue(new Message(filename, pattern.toString_scaled() + System.lineSeparator(), true));
 	}
-	
+
 	/**
 	 * Prints a message on stderr, if the debug mode is enabled
 	 * @param message
@@ -40,26 +78,85 @@ public class Logger {
 	public static void println(String message) {
 		if (Settings.debugMode)
 		{
-			System.err.println(message);
+			Appender.INSTANCE.enqueue(new Message(null, message + System.lineSeparator(), true));
 		}
 	}
-	
+
+	/**
+	 * Replaces the contents of a debug file with the given patterns. The
+	 * patterns are formatted by the caller, only the writing is left to the
+	 * writer thread.
+	 */
 	public static void saveToFile(String filename, List<Pattern> patterns) {
 		if (Settings.debugMode == false)
 		{
 			return;
 		}
-		String path = getUserHomePath();
-		String fullPath = path + filename + ".debug.txt";
-		try(BufferedWriter out = new BufferedWriter(new FileWriter(fullPath)))
-		{
-			for(Pattern pattern : patterns)
-			{
-				out.write(pattern.toString_scaled() + "\n");
-			}
-		} catch (IOException e) {
-			e.printStackTrace();
+		StringBuilder text = new StringBuilder();
+		for (Pattern pattern : patterns) {
+			text.append(pattern.toString_scaled()).append('\n');
+		}
+		Appender.INSTANCE.enqueue(new Message(filename, text.toString(), false));
+	}
+
+	/**
+	 * Waits until every message logged so far is written and flushed, for at
+	 * most 10 seconds
+	 *
+	 * @return true if the messages were written, false on timeout
+	 * @throws InterruptedException
+	 *             if the caller is interrupted while waiting
+	 */
+	public static boolean flush() throws InterruptedException {
+		if (!started) {
+			return true;
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(FLUSH_TIMEOUT_MILLIS);
+		CountDownLatch written = new CountDownLatch(1);
+		if (!Appender.INSTANCE.buffer.offer(new Message(written), FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+			return false;
+		}
+		return written.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param n
+	 *            log one classified pattern out of n; 1 logs all of them
+	 */
+	public static void setSampling(int n) {
+		if (n < 1) {
+			throw new IllegalArgumentException("The sampling should be at least 1");
 		}
+		sampling = n;
+	}
+
+	/**
+	 * @return one classified pattern out of getSampling() is logged
+	 */
+	public static int getSampling() {
+		return sampling;
+	}
+
+	/**
+	 * @param overflowPolicy
+	 *            what a caller does when the buffer is full
+	 */
+	public static void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		policy = overflowPolicy;
+	}
+
+	/**
+	 * @return what a caller does when the buffer is full
+	 */
+	public static OverflowPolicy getOverflowPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return how many messages were discarded because the buffer was full
+	 */
+	public static long getDroppedMessages() {
+		return dropped.get();
 	}
 
 	/**
@@ -69,5 +166,145 @@ public class Logger {
 		return System.getProperty("user.home") + File.separator;
 	}
 
-	
+	/**
+	 * Text for a debug file or for stderr, or a flush request
+	 */
+	private static final class Message {
+		final String filename; // null for stderr
+		final String text; // with the line terminators
+		final boolean append; // false to replace the contents of the file
+		final CountDownLatch written; // for flush requests
+
+		Message(String filename, String text, boolean append) {
+			this.filename = filename;
+			this.text = text;
+			this.append = append;
+			this.written = null;
+		}
+
+		Message(CountDownLatch written) {
+			this.filename = null;
+			this.text = null;
+			this.append = true;
+			this.written = written;
+		}
+	}
+
+	/**
+	 * The ring buffer and its writer thread, created on first use
+	 */
+	private static final class Appender implements Runnable {
+
+		static final Appender INSTANCE = new Appender();
+
+		final ArrayBlockingQueue<Message> buffer = new ArrayBlockingQueue<Message>(
+				Math.max(1, Integer.getInteger(PROPERTY_PREFIX + "capacity", DEFAULT_CAPACITY)));
+		// open debug files, used only by the writer thread
+		private final Map<String, Writer> writers = new HashMap<String, Writer>();
+		private final Thread writer;
+
+		private Appender() {
+			writer = new Thread(this, "FAMR debug log writer");
+			writer.setDaemon(true);
+			writer.start();
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						flush();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}, "FAMR debug log flush"));
+			started = true;
+		}
+
+		void enqueue(Message message) {
+			if (policy == OverflowPolicy.BLOCK) {
+				put(message);
+			} else if (!buffer.offer(message)) {
+				dropped.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Waits for room in the buffer; gives up, dropping the message, if
+		 * the writer thread is gone
+		 */
+		void put(Message message) {
+			try {
+				while (!buffer.offer(message, BLOCK_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (!writer.isAlive()) {
+						dropped.incrementAndGet();
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				dropped.incrementAndGet();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		public void run() {
+			List<Message> batch = new ArrayList<Message>();
+			while (true) {
+				try {
+					batch.add(buffer.take());
+				} catch (InterruptedException e) {
+					return;
+				}
+				buffer.drainTo(batch);
+				List<CountDownLatch> flushed = new ArrayList<CountDownLatch>();
+				for (Message message : batch) {
+					if (message.written != null) {
+						flushed.add(message.written);
+					} else {
+						write(message);
+					}
+				}
+				batch.clear();
+				flushAll();
+				for (CountDownLatch written : flushed) {
+					written.countDown();
+				}
+			}
+		}
+
+		/**
+		 * Writes one message; any failure is reported and skipped, so that the
+		 * writer thread keeps running
+		 */
+		private void write(Message message) {
+			try {
+				if (message.filename == null) {
+					System.err.print(message.text);
+					return;
+				}
+				Writer out = writers.get(message.filename);
+				if (out == null || !message.append) {
+					if (out != null) {
+						out.close();
+					}
+					String fullPath = getUserHomePath() + message.filename + ".debug.txt";
+					out = new BufferedWriter(new FileWriter(fullPath, message.append));
+					writers.put(message.filename, out);
+				}
+				out.write(message.text);
+			} catch (Throwable e) {
+				e.printStackTrace();
+			}
+		}
+
+		private void flushAll() {
+			for (Writer out : writers.values()) {
+				try {
+					out.flush();
+				} catch (Throwable e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
 }
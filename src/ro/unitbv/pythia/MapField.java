@@ -18,29 +18,103 @@ import java.util.Arrays;
 * Computers and Artificial intelligence, 9, 1990, 159-167.
 * This is essentialy where this model is different than the original
 * Carpenter et al. Fuzzy Artmap paradigm.
+*
+* w_ab is stored as a row-major primitive matrix, one row per input category;
+* rows and columns grow by doubling, so adding n categories or classes costs
+* O(n) amortized copying. For many classes, the rows can be stored sparsely
+* instead, see SparseRows.
 */
 public class MapField implements Serializable
 {
-	private static final long serialVersionUID = 2L;
+	private static final long serialVersionUID = 3L;
+	private static final int DEFAULT_CAPACITY = 16;
 	
 	private int na = 0;
 	private int nb = 0;
     private final double rho_ab; // initialized by constructor
-	private FuzzyVector w_ab[] = null;
-	private FuzzyVector x_ab = null;
+    private int capacity; // rows of w_ab and Q_t allocated
+    private int stride; // row length of w_ab, at least nb
+	private double w_ab[] = null; // row J starts at J * stride
+	private float w_abf[] = null; // used instead of w_ab in single precision mode
+	private final boolean singlePrecision;
+	private SparseRows sparseRows = null; // used instead of w_ab / w_abf in sparse mode
     private double Q_t[] = null;
     private final double q_0 = 0.0;
 
+    // undo journal: rows of w_ab changed since mark(), with their previous values
+    private transient boolean marked = false;
+    private transient int markedNa = 0;
+    private transient int markedNb = 0;
+    private transient int journalLength = 0;
+    private transient int journalRows[] = null;
+    private transient double journalW_ab[] = null; // saved row k starts at k * markedNb
+    private transient double journalQ_t[] = null;
+    private transient SparseRows journalSparse = null; // saved rows in sparse mode
+
     /**
      * Instantiates MapField for classification
      * @param rho_ab mapfield vigilance value
      * @param nb number of output classes
      */
     public MapField( double rho_ab, int nb )
+	{
+        this( rho_ab, nb, false );
+	}
+
+    /**
+     * Instantiates MapField for classification
+     * @param rho_ab mapfield vigilance value
+     * @param nb number of output classes
+     * @param singlePrecision true to store the probabilities as float; the
+     * updates are still computed in double
+     */
+    public MapField( double rho_ab, int nb, boolean singlePrecision )
+	{
+        this( rho_ab, nb, singlePrecision, 0 );
+	}
+
+    /**
+     * Instantiates MapField for classification
+     * @param rho_ab mapfield vigilance value
+     * @param nb number of output classes
+     * @param singlePrecision true to store the probabilities as float; the
+     * updates are still computed in double
+     * @param initialCapacity expected number of input categories; 0 for the
+     * default
+     */
+    public MapField( double rho_ab, int nb, boolean singlePrecision, int initialCapacity )
+	{
+        this( rho_ab, nb, singlePrecision, initialCapacity, false );
+	}
+
+    /**
+     * Instantiates MapField for classification
+     * @param rho_ab mapfield vigilance value
+     * @param nb number of output classes
+     * @param singlePrecision true to round the probabilities to float; the
+     * updates are still computed in double
+     * @param initialCapacity expected number of input categories; 0 for the
+     * default
+     * @param sparse true to store, for each input category, only the classes
+     * it has learned; the other classes share one value. Memory and argmax
+     * then depend on the learned classes, not on nb.
+     */
+    public MapField( double rho_ab, int nb, boolean singlePrecision, int initialCapacity, boolean sparse )
 	{
 		// used for classification, when art_b is a FuzzyVector object
+        if ( initialCapacity < 0 )
+        {
+            throw new IllegalArgumentException( "The initial capacity should be non negative" );
+        }
         this.rho_ab = rho_ab;
         this.nb = nb;
+        this.singlePrecision = singlePrecision;
+        this.capacity = initialCapacity == 0 ? DEFAULT_CAPACITY : initialCapacity;
+        this.stride = Math.max( nb, 1 );
+        if ( sparse )
+        {
+            this.sparseRows = new SparseRows( this.capacity, singlePrecision );
+        }
 	}
 
     /**
@@ -51,54 +125,77 @@ public class MapField implements Serializable
 	{
 		// used for regression, when art_b is a FuzzyArt object
         this.rho_ab = rho_ab;
+        this.singlePrecision = false;
+        this.capacity = DEFAULT_CAPACITY;
+        this.stride = 1;
 	}
 
     /**
-     * Compute the Mapfield activity vector x_ab
-     * @param y_b the output vector associated with the current input
-     * @param J the input category index
+     * Vigilance test
+     * This test is in accordance with Carpenter's notation: the norm of the
+     * Mapfield activity x_ab = y_b and w_ab[J] is compared with the norm of
+     * y_b. x_ab is summed on the fly, without being stored.
+     * @param y_b the output vector
+     * @param J the index of the winner input category
+     * @return true if the current pattern is accepted (in accordance with mapfield) or not
      */
-    private void computeActivation( FuzzyVector y_b, int J )
+    public boolean accept( FuzzyVector y_b, int J )
 	{
-		x_ab = y_b.and( w_ab[J] );
+        if ( y_b.length != nb )
+        {
+            throw new RuntimeException( "Size mismatch in 'accept' method" );
+        }
+        double norm_x_ab = 0;
+        int offset = J * stride;
+        for ( int k=0; k < nb; k++ )
+        {
+            norm_x_ab += Math.min( y_b.v[k], sparseRows != null ? sparseRows.get( J, k ) : get( offset + k ) );
+        }
+        return norm_x_ab * nb >= rho_ab * y_b.norm();
 	}
 
     /**
-     * Vigilance test
-     * This test is in accordance with Carpenter's notation.
-     * However, we can replace it with something more simple, like:
-     * public boolean accept(J, K)
-     * {
-     *      return (w_ab[J,K] * nb) greater than rho_ab
-     * }
-     * In this case, computeActivation can be deleted.
-     * I have preserved the original notation for scientific purposes.
-     * @param y_b the output vector, 1 hot encoded
+     * Vigilance test for a 1 hot encoded output: y_b and w_ab[J] has the
+     * single non zero entry w_ab[J][K], so the test reduces to
+     * w_ab[J][K] * nb &gt;= rho_ab
      * @param J the index of the winner input category
+     * @param K the index of the output class
      * @return true if the current pattern is accepted (in accordance with mapfield) or not
      */
-    public boolean accept( FuzzyVector y_b, int J )
+    public boolean accept( int J, int K )
 	{
-		computeActivation( y_b, J );
-        return x_ab.norm() * nb >= rho_ab * y_b.norm();
+        return getw_ab( J, K ) * nb >= rho_ab;
 	}
 
     /**
-     * Learn conditional probabilities w_ab[J]
+     * Learn conditional probabilities w_ab[J]; row J is updated in place,
+     * w_ab[J] += A_t * (delta_t - w_ab[J]), where delta_t is 1 hot encoded
+     * on K
      * @param J the index of the winning input category
      * @param K the index of the winning output category
      * @param q_t teh relevance factor assigned to the current training pattern
      */
     public void learn( int J, int K, double q_t )
 	{
+		beforeChange( J );
 		Q_t[J] += q_t;
         double A_t = q_t / Q_t[J];
-        FuzzyVector delta_t = new FuzzyVector( nb );
-        delta_t.initValue( 0 );
-        delta_t.setValueAtPos( K, 1 );
-        FuzzyVector aux = delta_t.diff( w_ab[J] );
-        aux = aux.times( A_t );
-        w_ab[J] = w_ab[J].sum( aux );
+        if ( sparseRows != null )
+        {
+            sparseRows.learn( J, K, A_t );
+            return;
+        }
+        int offset = J * stride;
+        if ( !singlePrecision )
+        {
+            Kernels.moveTowards( w_ab, offset, nb, K, A_t );
+            return;
+        }
+        for ( int k=0; k < nb; k++ )
+        {
+            double w = get( offset + k );
+            set( offset + k, w + A_t * ((k == K ? 1 : 0) - w) );
+        }
 	}
 
 	/**
@@ -106,16 +203,22 @@ public class MapField implements Serializable
      */
     public void addWeight_a()
 	{
+        ensureCapacity( na + 1 );
+        int from = na * stride;
+        if ( sparseRows != null )
+        {
+            sparseRows.init( na, 1./nb );
+        }
+        else if ( singlePrecision )
+        {
+            Arrays.fill( w_abf, from, from + nb, (float)(1./nb) );
+        }
+        else
+        {
+            Arrays.fill( w_ab, from, from + nb, 1./nb );
+        }
+        Q_t[na] = q_0;
 		na++;
-        FuzzyVector aux[] = new FuzzyVector[na];
-		Util.safeArrayCopy( w_ab, 0, aux, 0, na-1 );
-		aux[na-1] = new FuzzyVector( nb );
-        aux[na-1].initValue( 1./nb );
-		w_ab = aux;
-        double auxQ_t[] = new double[na];
-        Util.safeArrayCopy( Q_t, 0, auxQ_t, 0, na-1 );
-        auxQ_t[na-1] = q_0;
-        Q_t = auxQ_t;
 	}
 
      /**
@@ -128,19 +231,223 @@ public class MapField implements Serializable
         {
             return; // when first node is added, do nothing
         }
+        if ( nb > stride && sparseRows == null )
+        {
+            resize( capacity, Math.max( nb, 2 * stride ) );
+        }
         for ( int j=0; j < na; j++ )
         {
-            FuzzyVector aux = new FuzzyVector(nb);
+            beforeChange( j );
+            int offset = j * stride;
             double val = q_0 / (nb * Q_t[j]);
+            if ( sparseRows != null )
+            {
+                sparseRows.addClass( j, nb, val/(nb-1), val );
+                continue;
+            }
             for ( int k=0; k < nb-1; k++ )
             {
-                aux.setValueAtPos( k, w_ab[j].getValueAtPos( k ) - val/(nb-1) );
+                set( offset + k, get( offset + k ) - val/(nb-1) );
             }
-            aux.setValueAtPos( nb-1, val );
-            w_ab[j] = aux;
+            set( offset + nb-1, val );
         }
 	}
 
+    /**
+     * Makes room for at least minCapacity rows
+     * @param minCapacity the requested number of rows
+     */
+    private void ensureCapacity( int minCapacity )
+    {
+        if ( Q_t == null )
+        {
+            capacity = Math.max( capacity, minCapacity );
+            if ( sparseRows == null && singlePrecision )
+            {
+                w_abf = new float[capacity * stride];
+            }
+            else if ( sparseRows == null )
+            {
+                w_ab = new double[capacity * stride];
+            }
+            Q_t = new double[capacity];
+        }
+        else if ( minCapacity > capacity )
+        {
+            resize( Math.max( minCapacity, 2 * capacity ), stride );
+        }
+    }
+
+    /**
+     * Moves the rows to a matrix of newCapacity rows of length newStride
+     */
+    private void resize( int newCapacity, int newStride )
+    {
+        if ( Q_t == null )
+        {
+            capacity = newCapacity;
+            stride = newStride;
+            return;
+        }
+        // the sparse rows grow by themselves, only Q_t is resized for them
+        if ( sparseRows == null && newStride == stride )
+        {
+            if ( singlePrecision )
+            {
+                w_abf = Arrays.copyOf( w_abf, newCapacity * newStride );
+            }
+            else
+            {
+                w_ab = Arrays.copyOf( w_ab, newCapacity * newStride );
+            }
+        }
+        else if ( sparseRows == null && singlePrecision )
+        {
+            float aux[] = new float[newCapacity * newStride];
+            for ( int j=0; j < na; j++ )
+            {
+                System.arraycopy( w_abf, j * stride, aux, j * newStride, stride );
+            }
+            w_abf = aux;
+        }
+        else if ( sparseRows == null )
+        {
+            double aux[] = new double[newCapacity * newStride];
+            for ( int j=0; j < na; j++ )
+            {
+                System.arraycopy( w_ab, j * stride, aux, j * newStride, stride );
+            }
+            w_ab = aux;
+        }
+        Q_t = Arrays.copyOf( Q_t, newCapacity );
+        capacity = newCapacity;
+        stride = newStride;
+    }
+
+    private double get( int index )
+    {
+        return singlePrecision ? w_abf[index] : w_ab[index];
+    }
+
+    private void set( int index, double value )
+    {
+        if ( singlePrecision )
+        {
+            w_abf[index] = (float) value;
+        }
+        else
+        {
+            w_ab[index] = value;
+        }
+    }
+
+    /**
+     * Starts recording the changes, so that they can be undone by rollback()
+     */
+    public void mark()
+    {
+        marked = true;
+        markedNa = na;
+        markedNb = nb;
+        journalLength = 0;
+    }
+
+    /**
+     * Saves a copy of row J in the journal, if a mark is set and the row
+     * existed when the mark was set. Every row existing at the mark is saved
+     * before addWeight_b widens it, so markedNb values are enough.
+     * @param J the index of the row about to be changed
+     */
+    private void beforeChange( int J )
+    {
+        if ( !marked || J >= markedNa )
+        {
+            return;
+        }
+        for ( int k=0; k < journalLength; k++ )
+        {
+            if ( journalRows[k] == J )
+            {
+                return;
+            }
+        }
+        if ( journalRows == null )
+        {
+            journalRows = new int[1];
+            journalW_ab = new double[markedNb];
+            journalQ_t = new double[1];
+        }
+        else if ( journalLength == journalRows.length )
+        {
+            journalRows = Arrays.copyOf( journalRows, 2 * journalLength );
+            journalW_ab = Arrays.copyOf( journalW_ab, 2 * journalLength * markedNb );
+            journalQ_t = Arrays.copyOf( journalQ_t, 2 * journalLength );
+        }
+        if ( journalW_ab.length < (journalLength + 1) * markedNb )
+        {
+            // the journal was allocated for a smaller markedNb
+            journalW_ab = Arrays.copyOf( journalW_ab, journalRows.length * markedNb );
+        }
+        journalRows[journalLength] = J;
+        if ( sparseRows != null )
+        {
+            if ( journalSparse == null )
+            {
+                journalSparse = new SparseRows( journalRows.length, singlePrecision );
+            }
+            journalSparse.copy( sparseRows, J, journalLength );
+        }
+        else
+        {
+            for ( int k=0; k < markedNb; k++ )
+            {
+                journalW_ab[journalLength * markedNb + k] = get( J * stride + k );
+            }
+        }
+        journalQ_t[journalLength] = Q_t[J];
+        journalLength++;
+    }
+
+    /**
+     * Undoes the changes made since mark(): restores the changed rows and
+     * drops the rows added in the meantime
+     */
+    public void rollback()
+    {
+        if ( !marked )
+        {
+            throw new IllegalStateException( "rollback called without mark" );
+        }
+        for ( int k = journalLength-1; k >= 0; k-- )
+        {
+            int offset = journalRows[k] * stride;
+            if ( sparseRows != null )
+            {
+                sparseRows.copy( journalSparse, k, journalRows[k] );
+            }
+            else
+            {
+                for ( int i=0; i < markedNb; i++ )
+                {
+                    set( offset + i, journalW_ab[k * markedNb + i] );
+                }
+            }
+            Q_t[journalRows[k]] = journalQ_t[k];
+        }
+        na = markedNa;
+        nb = markedNb;
+        commit();
+    }
+
+    /**
+     * Keeps the changes made since mark() and stops recording
+     */
+    public void commit()
+    {
+        marked = false;
+        journalLength = 0;
+    }
+
     /**
      * Return a clone of w_ab; it gives read-only access to w_ab
      * @param J the index of the input category
@@ -148,21 +455,133 @@ public class MapField implements Serializable
      */
 	public FuzzyVector getw_ab( int J )
 	{
-		return w_ab[J].clone();
+		return row( J );
 	}
 
+    /**
+     * @param J the index of the input category
+     * @param K the index of the output class
+     * @return w_ab[J][K]
+     */
+    public double getw_ab( int J, int K )
+    {
+        return sparseRows != null ? sparseRows.get( J, K ) : get( J * stride + K );
+    }
+
+    /**
+     * Same result as getw_ab( J ).posMax(), without copying the row; in
+     * sparse mode it takes time proportional to the classes learned by J
+     * @param J the index of the input category
+     * @return the index of the most probable class for J
+     */
+    public int posMax( int J )
+    {
+        if ( sparseRows != null )
+        {
+            return sparseRows.posMax( J, nb );
+        }
+        int index = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for ( int k=0; k < nb; k++ )
+        {
+            double w = get( J * stride + k );
+            if ( max < w )
+            {
+                max = w;
+                index = k;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Copy of row J of w_ab
+     * @param J the index of the input category
+     * @return row J of the mapfield
+     */
+    private FuzzyVector row( int J )
+    {
+        FuzzyVector result = new FuzzyVector( nb );
+        if ( sparseRows != null )
+        {
+            sparseRows.copyRow( J, nb, result.v );
+            return result;
+        }
+        for ( int k=0; k < nb; k++ )
+        {
+            result.v[k] = get( J * stride + k );
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the rows are stored sparsely
+     */
+    public boolean isSparse()
+    {
+        return sparseRows != null;
+    }
+
+    /**
+     * @return the sparse rows, to be read only; null for dense rows
+     */
+    SparseRows getSparseRows()
+    {
+        return sparseRows;
+    }
+
+    /**
+     * @return the number of values stored for w_ab: na * nb for dense rows,
+     * the explicit entries plus one shared value per row for sparse rows
+     */
+    public long storedValues()
+    {
+        if ( sparseRows == null )
+        {
+            return (long) na * nb;
+        }
+        long result = na;
+        for ( int j=0; j < na; j++ )
+        {
+            result += sparseRows.entries( j );
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the probabilities are stored as float
+     */
+    public boolean isSinglePrecision()
+    {
+        return singlePrecision;
+    }
+
+    /**
+     * @return the bytes allocated for the probabilities, dense or sparse,
+     *         including the spare capacity; array headers are not counted
+     */
+    long storageBytes()
+    {
+        if ( sparseRows != null )
+        {
+            return sparseRows.storageBytes();
+        }
+        return w_ab != null ? 8L * w_ab.length : w_abf != null ? 4L * w_abf.length : 0;
+    }
+
     /**
 	* Object cloning
 	*/
 	public MapField clone()
 	{
-	    MapField result = new MapField(this.rho_ab, this.nb);
+	    MapField result = new MapField(this.rho_ab, this.nb, this.singlePrecision, this.capacity, false);
 	    
 	    result.na = this.na;
+	    result.stride = this.stride;
 	    result.Q_t = this.Q_t == null ? null : Arrays.copyOf(this.Q_t, this.Q_t.length);
-	    result.w_ab = new FuzzyVector[this.na];
-	    Util.safeArrayCopy( this.w_ab, 0, result.w_ab, 0, this.na );//TODO: make deep copy 
-	    result.x_ab = this.x_ab == null ? null : this.x_ab.clone();
+	    result.w_ab = this.w_ab == null ? null : Arrays.copyOf(this.w_ab, this.w_ab.length);
+	    result.w_abf = this.w_abf == null ? null : Arrays.copyOf(this.w_abf, this.w_abf.length);
+	    result.sparseRows = this.sparseRows == null ? null : this.sparseRows.copy(this.na);
 	    
 	    return result;
 	}
@@ -175,16 +594,91 @@ public class MapField implements Serializable
       StringBuffer result = new StringBuffer();
       for( int i=0; i<na; i++)
       {
-        result.append( w_ab[i].toString() + "\n" );
+        result.append( row( i ).toString() + "\n" );
       }
       return result.toString();
     }
     
+    /**
+     * @param J the index of the input category
+     * @return the relevance mass learned by row J
+     */
+    double getQ_t( int J )
+    {
+        return Q_t[J];
+    }
+
+    /**
+     * Appends a copy of row J of source, with its relevance mass
+     * @param source a mapfield with the same classes and storage
+     * @param J the index of the row in source
+     */
+    void addRow( MapField source, int J )
+    {
+        addWeight_a();
+        int j = na - 1;
+        if ( sparseRows != null && source.sparseRows != null )
+        {
+            sparseRows.copy( source.sparseRows, J, j );
+        }
+        else
+        {
+            for ( int k=0; k < nb; k++ )
+            {
+                setw_ab( j, k, source.getw_ab( J, k ) );
+            }
+        }
+        Q_t[j] = source.Q_t[J];
+    }
+
+    /**
+     * Fuses row J of source into row j: both rows are relevance-weighted
+     * class frequencies, so the fused row is their mean weighted by Q_t, and
+     * the relevance masses add up
+     * @param j the index of the row which absorbs J
+     * @param source a mapfield with the same classes and storage
+     * @param J the index of the row in source
+     */
+    void fuse( int j, MapField source, int J )
+    {
+        double Q = Q_t[j] + source.Q_t[J];
+        if ( Q == 0 )
+        {
+            return;
+        }
+        double a = Q_t[j] / Q;
+        double b = source.Q_t[J] / Q;
+        if ( sparseRows != null && source.sparseRows != null )
+        {
+            sparseRows.fuse( j, a, source.sparseRows, J, b );
+        }
+        else
+        {
+            for ( int k=0; k < nb; k++ )
+            {
+                setw_ab( j, k, a * getw_ab( j, k ) + b * source.getw_ab( J, k ) );
+            }
+        }
+        Q_t[j] = Q;
+    }
+
+    /**
+     * w_ab[j][k] = value, for dense rows
+     */
+    private void setw_ab( int j, int k, double value )
+    {
+        if ( sparseRows != null )
+        {
+            throw new IllegalStateException( "Sparse rows are only set from sparse rows" );
+        }
+        set( j * stride + k, value );
+    }
+
     /**
      * @return number of lines in w_ab
      */
     public int getLinesNo()
     {
-    	return w_ab.length;
+    	return na;
     }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+package ro.unitbv.pythia;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Read-only FAMR classifier over a memory-mapped model file, see ModelFile.
+ * The weights, norms and mapfield probabilities are read in place from the
+ * mapping; opening a model copies nothing, and the mapping is shared with
+ * every other process using the same file. The arrays are mapped in chunks
+ * of whole rows, so a model may be larger than 2 GB. Like FAMRSnapshot, an
+ * instance never changes and can be queried by any number of threads; it
+ * classifies exactly like the FAMR it was written from (with the SIMD
+ * kernels, the in-memory sums may differ in the last bits, see Kernels).
+ *
+ * Obtain it with ModelFile.map(file).
+ */
+public final class MappedModel extends CategoryClassifier {
+
+	private final double rho_init_a;
+	private final double beta_a;
+	private final double rho_ab;
+	private final double iMin;
+	private final double iMax;
+	private final int epochs;
+	private final int inputDim;
+	private final int outputDim;
+	private final int numCategories;
+	private final boolean singlePrecision;
+	private final int chunkRows; // categories per mapped chunk
+	// per chunk; exactly one of the double / float views of each array is
+	// used
+	private final DoubleBuffer w[];
+	private final FloatBuffer wf[];
+	private final DoubleBuffer norms[];
+	private final DoubleBuffer w_ab[];
+	private final FloatBuffer w_abf[];
+	private final MappedSparseRows sparseRows; // used instead of w_ab / w_abf for a sparse mapfield
+
+	MappedModel(double rho_init_a, double beta_a, double rho_ab, double iMin, double iMax, int epochs, int inputDim,
+			int outputDim, int numCategories, boolean singlePrecision, int chunkRows, ByteBuffer weights[],
+			ByteBuffer norms[], ByteBuffer mapField[], MappedSparseRows sparseRows) {
+		this.rho_init_a = rho_init_a;
+		this.beta_a = beta_a;
+		this.rho_ab = rho_ab;
+		this.iMin = iMin;
+		this.iMax = iMax;
+		this.epochs = epochs;
+		this.inputDim = inputDim;
+		this.outputDim = outputDim;
+		this.numCategories = numCategories;
+		this.singlePrecision = singlePrecision;
+		this.chunkRows = chunkRows;
+		this.sparseRows = sparseRows;
+		int chunks = weights.length;
+		this.w = singlePrecision ? null : new DoubleBuffer[chunks];
+		this.wf = singlePrecision ? new FloatBuffer[chunks] : null;
+		this.norms = new DoubleBuffer[chunks];
+		this.w_ab = singlePrecision || sparseRows != null ? null : new DoubleBuffer[chunks];
+		this.w_abf = singlePrecision && sparseRows == null ? new FloatBuffer[chunks] : null;
+		for (int c = 0; c < chunks; c++) {
+			if (singlePrecision) {
+				this.wf[c] = weights[c].asFloatBuffer();
+			} else {
+				this.w[c] = weights[c].asDoubleBuffer();
+			}
+			if (w_abf != null) {
+				this.w_abf[c] = mapField[c].asFloatBuffer();
+			} else if (w_ab != null) {
+				this.w_ab[c] = mapField[c].asDoubleBuffer();
+			}
+			this.norms[c] = norms[c].asDoubleBuffer();
+		}
+	}
+
+	@Override
+	int findCategory(double[] scaledInput, double[] scratch) {
+		if (numCategories == 0) {
+			return -1;
+		}
+		if (scaledInput.length != inputDim) {
+			throw new RuntimeException("Size mismatch: expected input of length " + inputDim + ", got "
+					+ scaledInput.length);
+		}
+		Util.complementCode(scaledInput, scratch);
+		// the rows are matched in place, with absolute reads of the mapping
+		int stride = 2 * inputDim;
+		int J = -1;
+		double TMax = -1;
+		for (int c = 0; c < norms.length; c++) {
+			int first = c * chunkRows;
+			int rows = Math.min(chunkRows, numCategories - first);
+			DoubleBuffer chunkNorms = norms[c];
+			for (int r = 0; r < rows; r++) {
+				double match = singlePrecision ? Kernels.minSum(scratch, wf[c], r * stride, stride)
+						: Kernels.minSum(scratch, w[c], r * stride, stride);
+				double T = match / (FuzzyArt.ALPHA + chunkNorms.get(r));
+				if (T > TMax) {
+					J = first + r;
+					TMax = T;
+				}
+			}
+		}
+		return J;
+	}
+
+	@Override
+	double probability(int J, int k) {
+		if (sparseRows != null) {
+			return sparseRows.get(J, k);
+		}
+		int c = J / chunkRows;
+		int index = (J % chunkRows) * outputDim + k;
+		return singlePrecision ? w_abf[c].get(index) : w_ab[c].get(index);
+	}
+
+	@Override
+	SparseRowsView sparseRows() {
+		return sparseRows;
+	}
+
+	@Override
+	public int getInputCategoriesNo() {
+		return numCategories;
+	}
+
+	@Override
+	public int getOutputDim() {
+		return outputDim;
+	}
+
+	@Override
+	public int getInputDim() {
+		return inputDim;
+	}
+
+	/**
+	 * @return the baseline vigilance the model was trained with
+	 */
+	public double getRho_init_a() {
+		return rho_init_a;
+	}
+
+	/**
+	 * @return the learning rate the model was trained with
+	 */
+	public double getBeta_a() {
+		return beta_a;
+	}
+
+	/**
+	 * @return the mapfield threshold the model was trained with
+	 */
+	public double getRho_ab() {
+		return rho_ab;
+	}
+
+	@Override
+	public double getIMin() {
+		return iMin;
+	}
+
+	@Override
+	public double getIMax() {
+		return iMax;
+	}
+
+	/**
+	 * @return the number of training epochs
+	 */
+	public int getEpochs() {
+		return epochs;
+	}
+
+	/**
+	 * @return true if the weights and probabilities are stored as float
+	 */
+	public boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+}
@@ -0,0 +1,93 @@
+package ro.unitbv.pythia;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Sparse mapfield rows read in place from a model file, see ModelFile. The
+ * entries of row j are [rowStart(j), rowStart(j + 1)) in the classes and
+ * values arrays. Every array is mapped in chunks of 2^CHUNK_SHIFT items, so
+ * an item never spans two chunks.
+ */
+final class MappedSparseRows implements SparseRowsView {
+
+	// items per mapped chunk: 1 GB of longs or doubles
+	static final int CHUNK_SHIFT = 27;
+	private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+	private final boolean singlePrecision;
+	private final LongBuffer rowStarts[];
+	private final IntBuffer classes[];
+	// exactly one of the double / float views of each array is used
+	private final DoubleBuffer baseline[];
+	private final FloatBuffer baselinef[];
+	private final DoubleBuffer values[];
+	private final FloatBuffer valuesf[];
+
+	MappedSparseRows(boolean singlePrecision, ByteBuffer rowStarts[], ByteBuffer baselines[], ByteBuffer classes[],
+			ByteBuffer values[]) {
+		this.singlePrecision = singlePrecision;
+		this.rowStarts = new LongBuffer[rowStarts.length];
+		for (int c = 0; c < rowStarts.length; c++) {
+			this.rowStarts[c] = rowStarts[c].asLongBuffer();
+		}
+		this.classes = new IntBuffer[classes.length];
+		for (int c = 0; c < classes.length; c++) {
+			this.classes[c] = classes[c].asIntBuffer();
+		}
+		this.baseline = singlePrecision ? null : new DoubleBuffer[baselines.length];
+		this.baselinef = singlePrecision ? new FloatBuffer[baselines.length] : null;
+		for (int c = 0; c < baselines.length; c++) {
+			if (singlePrecision) {
+				this.baselinef[c] = baselines[c].asFloatBuffer();
+			} else {
+				this.baseline[c] = baselines[c].asDoubleBuffer();
+			}
+		}
+		this.values = singlePrecision ? null : new DoubleBuffer[values.length];
+		this.valuesf = singlePrecision ? new FloatBuffer[values.length] : null;
+		for (int c = 0; c < values.length; c++) {
+			if (singlePrecision) {
+				this.valuesf[c] = values[c].asFloatBuffer();
+			} else {
+				this.values[c] = values[c].asDoubleBuffer();
+			}
+		}
+	}
+
+	/**
+	 * @return the position of the first entry of row j
+	 */
+	private long rowStart(int j) {
+		return rowStarts[j >>> CHUNK_SHIFT].get(j & CHUNK_MASK);
+	}
+
+	@Override
+	public int entries(int j) {
+		return (int) (rowStart(j + 1) - rowStart(j));
+	}
+
+	@Override
+	public int classAt(int j, int i) {
+		long position = rowStart(j) + i;
+		return classes[(int) (position >>> CHUNK_SHIFT)].get((int) (position & CHUNK_MASK));
+	}
+
+	@Override
+	public double value(int j, int i) {
+		long position = rowStart(j) + i;
+		int c = (int) (position >>> CHUNK_SHIFT);
+		int index = (int) (position & CHUNK_MASK);
+		return singlePrecision ? valuesf[c].get(index) : values[c].get(index);
+	}
+
+	@Override
+	public double baseline(int j) {
+		int c = j >>> CHUNK_SHIFT;
+		int index = j & CHUNK_MASK;
+		return singlePrecision ? baselinef[c].get(index) : baseline[c].get(index);
+	}
+}
@@ -0,0 +1,61 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+
+/**
+ * Accuracies of two trained models on the same test set, and how often they
+ * agree; shared by PrecisionReport and ShardingReport.
+ */
+final class ModelComparison {
+
+	final double accuracyFirst;
+	final double accuracySecond;
+	final double agreement;
+
+	/**
+	 * Classifies the test set with both models
+	 *
+	 * @param first
+	 *            a trained model
+	 * @param second
+	 *            another trained model
+	 * @param test
+	 *            the test set
+	 */
+	ModelComparison(FAMR first, FAMR second, List<Pattern> test) {
+		int correctFirst = 0;
+		int correctSecond = 0;
+		int agreeing = 0;
+		for (Pattern pattern : test) {
+			int labelFirst = first.classifySingleInstance(pattern);
+			int labelSecond = second.classifySingleInstance(pattern);
+			if (labelFirst == pattern.getClassIndex()) {
+				correctFirst++;
+			}
+			if (labelSecond == pattern.getClassIndex()) {
+				correctSecond++;
+			}
+			if (labelFirst == labelSecond) {
+				agreeing++;
+			}
+		}
+		double n = test.size();
+		this.accuracyFirst = correctFirst / n;
+		this.accuracySecond = correctSecond / n;
+		this.agreement = agreeing / n;
+	}
+
+	/**
+	 * @return one line of a report
+	 */
+	static String line(String model, double accuracy, String categories, String cost) {
+		return model + ": accuracy= " + accuracy + "; categories= " + categories + "; " + cost + "\n";
+	}
+
+	/**
+	 * @return the last line of a report
+	 */
+	static String agreementLine(double agreement) {
+		return "label agreement= " + agreement + "\n";
+	}
+}
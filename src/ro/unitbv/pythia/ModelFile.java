@@ -0,0 +1,322 @@
+package ro.unitbv.pythia;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary model file for the inference part of a trained FAMR: the
+ * hyperparameters, the art_a weights, their cached norms and the mapfield
+ * probabilities. All values are little-endian; the arrays are contiguous and
+ * start at multiples of 8 bytes, so they can be memory-mapped and read in
+ * place by MappedModel.
+ *
+ * Layout, version 2:
+ * <pre>
+ * offset  type       content
+ *  0      int        magic, the bytes 'F' 'A' 'M' 'R'
+ *  4      int        version
+ *  8      int        flags; bit 0: weights and mapfield stored as float;
+ *                    bit 1: sparse mapfield
+ * 12      int        inputDim, length of an un-normalized input
+ * 16      int        outputDim, number of classes
+ * 20      int        numCategories
+ * 24      double     rho_init_a
+ * 32      double     beta_a
+ * 40      double     rho_ab
+ * 48      double     iMin
+ * 56      double     iMax
+ * 64      int        epochs
+ * 68      int        reserved, 0
+ * 72      weights    numCategories * 2 * inputDim values, row-major
+ *         norms      numCategories doubles
+ *         mapfield   numCategories * outputDim values, row-major
+ * </pre>
+ * A sparse mapfield keeps the form of SparseRows instead of the dense rows:
+ * <pre>
+ *         rowStarts  numCategories + 1 longs; the entries of row j are
+ *                    [rowStarts[j], rowStarts[j + 1])
+ *         baselines  numCategories values
+ *         classes    rowStarts[numCategories] ints, sorted within a row
+ *         values     rowStarts[numCategories] values
+ * </pre>
+ * Version 1 is the same layout without sparse mapfields; such files are
+ * still read. Each array is padded to a multiple of 8 bytes. Centroids,
+ * category sizes and relevance sums are not stored: the file cannot resume
+ * training. The arrays are mapped in chunks of at most 1 GB, cut after whole
+ * categories (after whole items for the sparse arrays), so the file may be
+ * larger than 2 GB.
+ */
+public final class ModelFile {
+
+	static final int MAGIC = 'F' | 'A' << 8 | 'M' << 16 | 'R' << 24;
+	static final int VERSION = 2;
+	static final int FLAG_SINGLE_PRECISION = 1;
+	static final int FLAG_SPARSE_MAP_FIELD = 2;
+	static final int HEADER_BYTES = 72;
+	private static final int BUFFER_BYTES = 1 << 16;
+	// largest mapping of one array chunk
+	private static final long MAX_CHUNK_BYTES = 1L << 30;
+
+	private ModelFile() {
+	}
+
+	/**
+	 * Writes the inference part of famr to file, replacing its contents
+	 *
+	 * @param famr
+	 *            the trained model
+	 * @param file
+	 *            the destination
+	 * @throws IOException
+	 *             if the file cannot be written
+	 */
+	public static void write(FAMR famr, File file) throws IOException {
+		CategoryStore categories = famr.getArt_a().getCategories();
+		MapField mapField = famr.getMapField();
+		boolean singlePrecision = categories.isSinglePrecision();
+		int n = categories.size();
+		int inputDim = Math.max(categories.inputDim(), 0);
+		int outputDim = famr.getOutputDim();
+		SparseRows sparseRows = mapField.getSparseRows();
+		int flags = (singlePrecision ? FLAG_SINGLE_PRECISION : 0) | (sparseRows != null ? FLAG_SPARSE_MAP_FIELD : 0);
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(flags);
+			buffer.putInt(inputDim);
+			buffer.putInt(outputDim);
+			buffer.putInt(n);
+			buffer.putDouble(famr.getRho_init_a());
+			buffer.putDouble(famr.getBeta_a());
+			buffer.putDouble(famr.getRho_ab());
+			buffer.putDouble(famr.getIMin());
+			buffer.putDouble(famr.getIMax());
+			buffer.putInt(famr.getEpochs());
+			buffer.putInt(0);
+
+			int weights = n * 2 * inputDim;
+			for (int i = 0; i < weights; i++) {
+				ensureRoom(channel, buffer, 8);
+				if (singlePrecision) {
+					buffer.putFloat(categories.wf[i]);
+				} else {
+					buffer.putDouble(categories.w[i]);
+				}
+			}
+			pad(channel, buffer);
+			for (int j = 0; j < n; j++) {
+				ensureRoom(channel, buffer, 8);
+				buffer.putDouble(categories.norms[j]);
+			}
+			if (sparseRows != null) {
+				writeSparse(channel, buffer, sparseRows, n, singlePrecision);
+			} else {
+				for (int j = 0; j < n; j++) {
+					for (int k = 0; k < outputDim; k++) {
+						ensureRoom(channel, buffer, 8);
+						if (singlePrecision) {
+							buffer.putFloat((float) mapField.getw_ab(j, k));
+						} else {
+							buffer.putDouble(mapField.getw_ab(j, k));
+						}
+					}
+				}
+				pad(channel, buffer);
+			}
+			flush(channel, buffer);
+		}
+	}
+
+	/**
+	 * Writes the first n sparse rows: row starts, baselines, classes and
+	 * values, each padded
+	 */
+	private static void writeSparse(FileChannel channel, ByteBuffer buffer, SparseRows rows, int n,
+			boolean singlePrecision) throws IOException {
+		long start = 0;
+		for (int j = 0; j <= n; j++) {
+			ensureRoom(channel, buffer, 8);
+			buffer.putLong(start);
+			if (j < n) {
+				start += rows.entries(j);
+			}
+		}
+		for (int j = 0; j < n; j++) {
+			ensureRoom(channel, buffer, 8);
+			putValue(buffer, rows.baseline(j), singlePrecision);
+		}
+		pad(channel, buffer);
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < rows.entries(j); i++) {
+				ensureRoom(channel, buffer, 4);
+				buffer.putInt(rows.classAt(j, i));
+			}
+		}
+		pad(channel, buffer);
+		for (int j = 0; j < n; j++) {
+			for (int i = 0; i < rows.entries(j); i++) {
+				ensureRoom(channel, buffer, 8);
+				putValue(buffer, rows.value(j, i), singlePrecision);
+			}
+		}
+		pad(channel, buffer);
+	}
+
+	private static void putValue(ByteBuffer buffer, double value, boolean singlePrecision) {
+		if (singlePrecision) {
+			buffer.putFloat((float) value);
+		} else {
+			buffer.putDouble(value);
+		}
+	}
+
+	/**
+	 * Maps file in memory, read-only. The values are not copied: they are
+	 * read from the page cache, shared by every process mapping the file.
+	 *
+	 * @param file
+	 *            a file written by write
+	 * @return the model, ready for classification
+	 * @throws IOException
+	 *             if the file cannot be read, or is not a valid model file
+	 */
+	public static MappedModel map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long fileSize = channel.size();
+			if (fileSize < HEADER_BYTES) {
+				throw new IOException(file + " is not a FAMR model file");
+			}
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a FAMR model file");
+			}
+			int version = header.getInt(4);
+			if (version < 1 || version > VERSION) {
+				throw new IOException("Unsupported model file version " + version + " in " + file);
+			}
+			boolean singlePrecision = (header.getInt(8) & FLAG_SINGLE_PRECISION) != 0;
+			boolean sparse = (header.getInt(8) & FLAG_SPARSE_MAP_FIELD) != 0;
+			int inputDim = header.getInt(12);
+			int outputDim = header.getInt(16);
+			int n = header.getInt(20);
+			int valueBytes = singlePrecision ? 4 : 8;
+
+			long offset = HEADER_BYTES;
+			long weightsBytes = (long) n * 2 * inputDim * valueBytes;
+			long normsBytes = (long) n * 8;
+			long normsOffset = offset + padded(weightsBytes);
+			long mapFieldOffset = normsOffset + normsBytes;
+			MappedSparseRows sparseRows = null;
+			if (sparse) {
+				sparseRows = mapSparse(channel, mapFieldOffset, n, singlePrecision, fileSize, file);
+			} else if (mapFieldOffset + padded((long) n * outputDim * valueBytes) != fileSize) {
+				throw new IOException("Truncated or corrupt model file " + file);
+			}
+			// every array is cut after the same categories, so that a row never
+			// spans two chunks
+			long rowItems = sparse ? 2L * inputDim : Math.max(2L * inputDim, outputDim);
+			long rowBytes = Math.max(8, rowItems * valueBytes);
+			int chunkRows = (int) Math.max(1, Math.min(Integer.MAX_VALUE, MAX_CHUNK_BYTES / rowBytes));
+			int chunks = (int) ((n + (long) chunkRows - 1) / chunkRows);
+			ByteBuffer weights[] = new ByteBuffer[chunks];
+			ByteBuffer norms[] = new ByteBuffer[chunks];
+			ByteBuffer mapField[] = sparse ? null : new ByteBuffer[chunks];
+			for (int c = 0; c < chunks; c++) {
+				long first = (long) c * chunkRows;
+				long rows = Math.min(chunkRows, n - first);
+				weights[c] = map(channel, offset + first * 2 * inputDim * valueBytes,
+						rows * 2 * inputDim * valueBytes);
+				norms[c] = map(channel, normsOffset + first * 8, rows * 8);
+				if (!sparse) {
+					mapField[c] = map(channel, mapFieldOffset + first * outputDim * valueBytes,
+							rows * outputDim * valueBytes);
+				}
+			}
+
+			return new MappedModel(header.getDouble(24), header.getDouble(32), header.getDouble(40),
+					header.getDouble(48), header.getDouble(56), header.getInt(64), inputDim, outputDim, n,
+					singlePrecision, chunkRows, weights, norms, mapField, sparseRows);
+		}
+	}
+
+	/**
+	 * Maps the sparse mapfield of n rows starting at offset, which must end
+	 * the file
+	 */
+	private static MappedSparseRows mapSparse(FileChannel channel, long offset, int n, boolean singlePrecision,
+			long fileSize, File file) throws IOException {
+		int valueBytes = singlePrecision ? 4 : 8;
+		long rowStartsBytes = 8L * (n + 1);
+		long baselinesOffset = offset + rowStartsBytes;
+		if (baselinesOffset > fileSize) {
+			throw new IOException("Truncated or corrupt model file " + file);
+		}
+		long entries = map(channel, offset + 8L * n, 8).getLong(0);
+		long classesOffset = baselinesOffset + padded((long) n * valueBytes);
+		long valuesOffset = classesOffset + padded(entries * 4);
+		if (entries < 0 || valuesOffset + padded(entries * valueBytes) != fileSize) {
+			throw new IOException("Truncated or corrupt model file " + file);
+		}
+		return new MappedSparseRows(singlePrecision, mapItems(channel, offset, n + 1L, 8),
+				mapItems(channel, baselinesOffset, n, valueBytes), mapItems(channel, classesOffset, entries, 4),
+				mapItems(channel, valuesOffset, entries, valueBytes));
+	}
+
+	/**
+	 * Maps an array of count items in chunks of 2^MappedSparseRows.CHUNK_SHIFT
+	 * items
+	 */
+	private static ByteBuffer[] mapItems(FileChannel channel, long offset, long count, int itemBytes)
+			throws IOException {
+		long chunkItems = 1L << MappedSparseRows.CHUNK_SHIFT;
+		ByteBuffer result[] = new ByteBuffer[(int) ((count + chunkItems - 1) / chunkItems)];
+		for (int c = 0; c < result.length; c++) {
+			long first = c * chunkItems;
+			result[c] = map(channel, offset + first * itemBytes, Math.min(chunkItems, count - first) * itemBytes);
+		}
+		return result;
+	}
+
+	/**
+	 * Maps one chunk of an array; the mapping stays valid after the channel is
+	 * closed
+	 */
+	private static ByteBuffer map(FileChannel channel, long offset, long bytes) throws IOException {
+		ByteBuffer result = channel.map(FileChannel.MapMode.READ_ONLY, offset, bytes);
+		return result.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static long padded(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+		if (buffer.remaining() < bytes) {
+			flush(channel, buffer);
+		}
+	}
+
+	private static void pad(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while ((channel.position() + buffer.position()) % 8 != 0) {
+			ensureRoom(channel, buffer, 1);
+			buffer.put((byte) 0);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		((Buffer) buffer).flip(); // Buffer methods, for Java 8 binaries
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+}
@@ -0,0 +1,128 @@
+package ro.unitbv.pythia;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork-join versions of the category scans of FuzzyArt. The category range is
+ * split in contiguous blocks; each block is scanned exactly like the
+ * sequential code, so the computed values and the selected winner (ties go to
+ * the lowest index) are the same.
+ */
+final class ParallelSearch {
+
+	private ParallelSearch() {
+	}
+
+	/**
+	 * @param n
+	 *            the number of categories
+	 * @return how many categories a leaf task scans
+	 */
+	private static int leafSize(int n) {
+		return Math.max(256, n / (4 * ForkJoinPool.getCommonPoolParallelism()));
+	}
+
+	/**
+	 * Computes match[j] = |I and w[j]| and T[j] = match[j] / (alpha + |w[j]|)
+	 * for all categories, in parallel
+	 */
+	static void computeT(double[] I, CategoryStore categories, double alpha, double[] match, double[] T) {
+		int n = categories.size();
+		ForkJoinPool.commonPool().invoke(new ChoiceTask(I, categories, alpha, match, T, 0, n, leafSize(n)));
+	}
+
+	/**
+	 * Finds the eligible category with the maximum T, in parallel
+	 *
+	 * @return the index of the first eligible category with maximum T; -1 if
+	 *         no category is eligible
+	 */
+	static int argMax(double[] T, boolean[] eligible, int n) {
+		return ForkJoinPool.commonPool().invoke(new ArgMaxTask(T, eligible, 0, n, leafSize(n)));
+	}
+
+	private static final class ChoiceTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private final double I[];
+		private final CategoryStore categories;
+		private final double alpha;
+		private final double match[];
+		private final double T[];
+		private final int from;
+		private final int to;
+		private final int leaf;
+
+		ChoiceTask(double[] I, CategoryStore categories, double alpha, double[] match, double[] T, int from, int to,
+				int leaf) {
+			this.I = I;
+			this.categories = categories;
+			this.alpha = alpha;
+			this.match = match;
+			this.T = T;
+			this.from = from;
+			this.to = to;
+			this.leaf = leaf;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > leaf) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ChoiceTask(I, categories, alpha, match, T, from, middle, leaf),
+						new ChoiceTask(I, categories, alpha, match, T, middle, to, leaf));
+				return;
+			}
+			double norms[] = categories.norms;
+			for (int j = from; j < to; j++) {
+				match[j] = categories.match(I, j);
+				T[j] = match[j] / (alpha + norms[j]);
+			}
+		}
+	}
+
+	private static final class ArgMaxTask extends RecursiveTask<Integer> {
+
+		private static final long serialVersionUID = 1L;
+		private final double T[];
+		private final boolean eligible[];
+		private final int from;
+		private final int to;
+		private final int leaf;
+
+		ArgMaxTask(double[] T, boolean[] eligible, int from, int to, int leaf) {
+			this.T = T;
+			this.eligible = eligible;
+			this.from = from;
+			this.to = to;
+			this.leaf = leaf;
+		}
+
+		@Override
+		protected Integer compute() {
+			if (to - from > leaf) {
+				int middle = (from + to) >>> 1;
+				ArgMaxTask right = new ArgMaxTask(T, eligible, middle, to, leaf);
+				right.fork();
+				int left = new ArgMaxTask(T, eligible, from, middle, leaf).compute();
+				int r = right.join();
+				if (left == -1) {
+					return r;
+				}
+				// on ties, keep the lower index
+				return r != -1 && T[r] > T[left] ? r : left;
+			}
+			int J = -1;
+			double TMax = -1;
+			for (int j = from; j < to; j++) {
+				if (eligible[j] && T[j] > TMax) {
+					J = j;
+					TMax = T[j];
+				}
+			}
+			return J;
+		}
+	}
+}
@@ -84,6 +84,13 @@ public class Pattern implements Cloneable, Serializable {
 		this.outputIsScaled = outputIsNormalized;
 	}
 
+	/**
+	 * @return the original, not scaled, input
+	 */
+	public double[] getInput() {
+		return input;
+	}
+
 	/**
 	 * @param input
 	 *            the input to set
@@ -149,21 +156,9 @@ public class Pattern implements Cloneable, Serializable {
 		if (isInputScaled()) {
 			return;
 		}
-		if (inputMax <= inputMin) {
-			throw new RuntimeException("In scaleInput: inputMin should be less than inputMax, they are (" + inputMin
-					+ ", " + inputMax + ")");
-		}
-		if (Util.min(this.input) < inputMin) {
-			throw new RuntimeException("In scaleInput: inputMin is larger than min of passed vector");
-		}
-		if (Util.max(this.input) > inputMax) {
-			throw new RuntimeException("In scaleInput: inputMax is larger than max of passed vector");
-		}
-		double range = inputMax - inputMin;
-		scaledInput = new double[input.length];
-		for (int i = 0; i < input.length; i++) {
-			scaledInput[i] = (input[i] - inputMin) / range;
-		}
+		double scaled[] = new double[input.length];
+		Util.scaleInput(input, inputMin, inputMax, scaled);
+		scaledInput = scaled;
 		setInputIsScaled(true);
 	}
 
@@ -0,0 +1,21 @@
+package ro.unitbv.pythia;
+
+import java.io.IOException;
+
+/**
+ * A training set kept outside the heap, for instance in a file. Each call of
+ * open() starts a new pass over the same patterns, so a source can be trained
+ * on for several epochs while only one pattern is in memory at a time.
+ */
+public interface PatternSource {
+
+	/**
+	 * Starts a pass over the patterns
+	 *
+	 * @return a stream positioned before the first pattern; the caller closes
+	 *         it
+	 * @throws IOException
+	 *             if the patterns cannot be read
+	 */
+	PatternStream open() throws IOException;
+}
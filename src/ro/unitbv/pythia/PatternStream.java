@@ -0,0 +1,36 @@
+package ro.unitbv.pythia;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * One pass over a PatternSource. The accessors describe the current pattern;
+ * the input array is reused, so it is only valid until the next call of
+ * next().
+ */
+public interface PatternStream extends Closeable {
+
+	/**
+	 * Moves to the next pattern
+	 *
+	 * @return false if there are no more patterns
+	 * @throws IOException
+	 *             if the pattern cannot be read or is malformed
+	 */
+	boolean next() throws IOException;
+
+	/**
+	 * @return the input of the current pattern, not scaled
+	 */
+	double[] input();
+
+	/**
+	 * @return the class index of the current pattern
+	 */
+	int classIndex();
+
+	/**
+	 * @return the relevance q_t of the current pattern, greater than 0
+	 */
+	double weight();
+}
@@ -0,0 +1,125 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+
+/**
+ * Compares a FAMR stored in double precision with the same FAMR stored in
+ * single precision: both are trained on the same data, with the same
+ * hyperparameters, and evaluated on the same test set.
+ */
+public final class PrecisionReport {
+
+	private final double accuracyDouble;
+	private final double accuracySingle;
+	private final double agreement;
+	private final int categoriesDouble;
+	private final int categoriesSingle;
+	private final long bytesDouble;
+	private final long bytesSingle;
+
+	private PrecisionReport(double accuracyDouble, double accuracySingle, double agreement, int categoriesDouble,
+			int categoriesSingle, long bytesDouble, long bytesSingle) {
+		this.accuracyDouble = accuracyDouble;
+		this.accuracySingle = accuracySingle;
+		this.agreement = agreement;
+		this.categoriesDouble = categoriesDouble;
+		this.categoriesSingle = categoriesSingle;
+		this.bytesDouble = bytesDouble;
+		this.bytesSingle = bytesSingle;
+	}
+
+	/**
+	 * Trains a double and a single precision FAMR, with the hyperparameters of
+	 * template, and compares them on the test set
+	 *
+	 * @param template
+	 *            gives the hyperparameters and settings; it is not trained
+	 * @param train
+	 *            the training set
+	 * @param test
+	 *            the test set
+	 * @return the comparison
+	 */
+	public static PrecisionReport compare(FAMR template, List<Pattern> train, List<Pattern> test) {
+		FAMR doubleModel = template.newUntrained(false);
+		FAMR singleModel = template.newUntrained(true);
+		doubleModel.train(train);
+		singleModel.train(train);
+
+		ModelComparison comparison = new ModelComparison(doubleModel, singleModel, test);
+		return new PrecisionReport(comparison.accuracyFirst, comparison.accuracySecond, comparison.agreement,
+				doubleModel.getInputCategoriesNo(), singleModel.getInputCategoriesNo(), storageBytes(doubleModel),
+				storageBytes(singleModel));
+	}
+
+	/**
+	 * @return the bytes allocated for the weights, centroids and mapfield,
+	 *         as actually stored: spare capacity and sparse rows included
+	 */
+	private static long storageBytes(FAMR famr) {
+		return famr.getArt_a().getCategories().storageBytes() + famr.getMapField().storageBytes();
+	}
+
+	/**
+	 * @return accuracy of the double precision model on the test set
+	 */
+	public double getAccuracyDouble() {
+		return accuracyDouble;
+	}
+
+	/**
+	 * @return accuracy of the single precision model on the test set
+	 */
+	public double getAccuracySingle() {
+		return accuracySingle;
+	}
+
+	/**
+	 * @return fraction of test patterns which get the same label from both
+	 *         models
+	 */
+	public double getAgreement() {
+		return agreement;
+	}
+
+	/**
+	 * @return number of categories of the double precision model
+	 */
+	public int getCategoriesDouble() {
+		return categoriesDouble;
+	}
+
+	/**
+	 * @return number of categories of the single precision model
+	 */
+	public int getCategoriesSingle() {
+		return categoriesSingle;
+	}
+
+	/**
+	 * @return bytes allocated for the weights, centroids and mapfield of the
+	 *         double precision model
+	 */
+	public long getBytesDouble() {
+		return bytesDouble;
+	}
+
+	/**
+	 * @return bytes allocated for the weights, centroids and mapfield of the
+	 *         single precision model
+	 */
+	public long getBytesSingle() {
+		return bytesSingle;
+	}
+
+	/**
+	 * Human readable report
+	 */
+	public String toString() {
+		return ModelComparison.line("double precision", accuracyDouble, String.valueOf(categoriesDouble),
+				"bytes= " + bytesDouble)
+				+ ModelComparison.line("single precision", accuracySingle, String.valueOf(categoriesSingle),
+						"bytes= " + bytesSingle)
+				+ ModelComparison.agreementLine(agreement);
+	}
+}
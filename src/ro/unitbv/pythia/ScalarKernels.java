@@ -0,0 +1,119 @@
+package ro.unitbv.pythia;
+
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+
+/**
+ * Plain Java loops; the reference implementation of the kernels
+ */
+class ScalarKernels implements KernelSet {
+
+	@Override
+	public double minSum(double[] x, double[] w, int offset, int length) {
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(x[i], w[offset + i]);
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(double[] w, int offset, int length) {
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += w[offset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double learn(double[] x, double[] w, int offset, int length, double beta) {
+		double norm = 0.0;
+		for (int i = 0; i < length; i++) {
+			double value = beta * Math.min(x[i], w[offset + i]) + (1 - beta) * w[offset + i];
+			w[offset + i] = value;
+			norm += value;
+		}
+		return norm;
+	}
+
+	@Override
+	public void min(double[] a, double[] b, double[] result, int length) {
+		for (int i = 0; i < length; i++) {
+			result[i] = Math.min(a[i], b[i]);
+		}
+	}
+
+	@Override
+	public double absSum(double[] v, int length) {
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.abs(v[i]);
+		}
+		return sum;
+	}
+
+	@Override
+	public double prod(double[] a, double[] b, int length) {
+		double prod = 0;
+		for (int i = 0; i < length; i++) {
+			prod += a[i] * b[i];
+		}
+		return prod;
+	}
+
+	@Override
+	public void moveTowards(double[] w, int offset, int length, int k, double rate) {
+		for (int i = 0; i < length; i++) {
+			double value = w[offset + i];
+			w[offset + i] = value + rate * ((i == k ? 1 : 0) - value);
+		}
+	}
+
+	@Override
+	public double minSum(double[] x, float[] w, int offset, int length) {
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(x[i], w[offset + i]);
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(float[] w, int offset, int length) {
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += w[offset + i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double learn(double[] x, float[] w, int offset, int length, double beta) {
+		double norm = 0.0;
+		for (int i = 0; i < length; i++) {
+			float value = (float) (beta * Math.min(x[i], w[offset + i]) + (1 - beta) * w[offset + i]);
+			w[offset + i] = value;
+			norm += value;
+		}
+		return norm;
+	}
+
+	@Override
+	public double minSum(double[] x, DoubleBuffer w, int offset, int length) {
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(x[i], w.get(offset + i));
+		}
+		return sum;
+	}
+
+	@Override
+	public double minSum(double[] x, FloatBuffer w, int offset, int length) {
+		double sum = 0.0;
+		for (int i = 0; i < length; i++) {
+			sum += Math.min(x[i], w.get(offset + i));
+		}
+		return sum;
+	}
+}
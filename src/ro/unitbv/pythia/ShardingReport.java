@@ -0,0 +1,141 @@
+package ro.unitbv.pythia;
+
+import java.util.List;
+
+/**
+ * Compares a FAMR trained sequentially with the same FAMR trained on shards
+ * and merged, see FAMR.trainSharded: both are trained on the same data, with
+ * the same hyperparameters, and evaluated on the same test set.
+ */
+public final class ShardingReport {
+
+	private final int shards;
+	private final double accuracySequential;
+	private final double accuracySharded;
+	private final double agreement;
+	private final int categoriesSequential;
+	private final int categoriesSharded;
+	private final int mergedCategories;
+	private final long nanosSequential;
+	private final long nanosSharded;
+
+	private ShardingReport(int shards, double accuracySequential, double accuracySharded, double agreement,
+			int categoriesSequential, int categoriesSharded, int mergedCategories, long nanosSequential,
+			long nanosSharded) {
+		this.shards = shards;
+		this.accuracySequential = accuracySequential;
+		this.accuracySharded = accuracySharded;
+		this.agreement = agreement;
+		this.categoriesSequential = categoriesSequential;
+		this.categoriesSharded = categoriesSharded;
+		this.mergedCategories = mergedCategories;
+		this.nanosSequential = nanosSequential;
+		this.nanosSharded = nanosSharded;
+	}
+
+	/**
+	 * Trains a FAMR sequentially and another one on shards, with the
+	 * hyperparameters of template, and compares them on the test set
+	 *
+	 * @param template
+	 *            gives the hyperparameters and settings; it is not trained
+	 * @param train
+	 *            the training set
+	 * @param test
+	 *            the test set
+	 * @param shards
+	 *            the number of shards
+	 * @return the comparison
+	 */
+	public static ShardingReport compare(FAMR template, List<Pattern> train, List<Pattern> test, int shards) {
+		FAMR sequentialModel = template.newUntrained(template.isSinglePrecision());
+		FAMR shardedModel = template.newUntrained(template.isSinglePrecision());
+		long start = System.nanoTime();
+		sequentialModel.train(train);
+		long nanosSequential = System.nanoTime() - start;
+		start = System.nanoTime();
+		int merged = shardedModel.trainSharded(train, shards);
+		long nanosSharded = System.nanoTime() - start;
+
+		ModelComparison comparison = new ModelComparison(sequentialModel, shardedModel, test);
+		return new ShardingReport(shards, comparison.accuracyFirst, comparison.accuracySecond, comparison.agreement,
+				sequentialModel.getInputCategoriesNo(), shardedModel.getInputCategoriesNo(), merged, nanosSequential,
+				nanosSharded);
+	}
+
+	/**
+	 * @return the number of shards
+	 */
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * @return accuracy of the sequentially trained model on the test set
+	 */
+	public double getAccuracySequential() {
+		return accuracySequential;
+	}
+
+	/**
+	 * @return accuracy of the merged model on the test set
+	 */
+	public double getAccuracySharded() {
+		return accuracySharded;
+	}
+
+	/**
+	 * @return fraction of test patterns which get the same label from both
+	 *         models
+	 */
+	public double getAgreement() {
+		return agreement;
+	}
+
+	/**
+	 * @return number of categories of the sequentially trained model
+	 */
+	public int getCategoriesSequential() {
+		return categoriesSequential;
+	}
+
+	/**
+	 * @return number of categories of the merged model
+	 */
+	public int getCategoriesSharded() {
+		return categoriesSharded;
+	}
+
+	/**
+	 * @return number of shard categories merged into categories of other
+	 *         shards
+	 */
+	public int getMergedCategories() {
+		return mergedCategories;
+	}
+
+	/**
+	 * @return training time of the sequential model, in nanoseconds
+	 */
+	public long getNanosSequential() {
+		return nanosSequential;
+	}
+
+	/**
+	 * @return training and merge time of the sharded model, in nanoseconds
+	 */
+	public long getNanosSharded() {
+		return nanosSharded;
+	}
+
+	/**
+	 * Human readable report
+	 */
+	public String toString() {
+		return ModelComparison.line("sequential", accuracySequential, String.valueOf(categoriesSequential),
+				"ms= " + nanosSequential / 1000000)
+				+ ModelComparison.line(shards + " shards", accuracySharded,
+						categoriesSharded + " (" + mergedCategories + " merged)", "ms= " + nanosSharded / 1000000)
+				+ ModelComparison.agreementLine(agreement);
+	}
+}
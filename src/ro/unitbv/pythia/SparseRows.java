@@ -0,0 +1,253 @@
+package ro.unitbv.pythia;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Sparse storage for the rows of a MapField. Row j holds the same value,
+ * baseline[j], for every class, except for the classes listed in classes[j]
+ * (sorted, count[j] of them) whose values are in values[j]. A new row is all
+ * baseline; a class gets an explicit entry the first time the row learns it.
+ *
+ * Every class without an entry is updated by the same arithmetic as the
+ * dense row, so the values are exactly the dense ones; a row update costs
+ * O(entries) instead of O(classes). In single precision mode the baselines
+ * and the values are stored as float, like the dense single precision rows.
+ */
+final class SparseRows implements SparseRowsView, Serializable {
+
+	private static final long serialVersionUID = 2L;
+	private static final int[] NO_CLASSES = new int[0];
+	private static final double[] NO_VALUES = new double[0];
+	private static final float[] NO_VALUESF = new float[0];
+
+	private final boolean singlePrecision;
+	private int capacity;
+	// exactly one of baseline / baselinef and one of values / valuesf is used
+	private double baseline[];
+	private float baselinef[];
+	private int classes[][];
+	private double values[][];
+	private float valuesf[][];
+	private int count[];
+
+	/**
+	 * @param capacity
+	 *            how many rows can be stored before the first growth
+	 * @param singlePrecision
+	 *            true to store the values as float, as the dense single
+	 *            precision rows do
+	 */
+	SparseRows(int capacity, boolean singlePrecision) {
+		this.capacity = capacity;
+		this.singlePrecision = singlePrecision;
+		if (singlePrecision) {
+			this.baselinef = new float[capacity];
+			this.valuesf = new float[capacity][];
+		} else {
+			this.baseline = new double[capacity];
+			this.values = new double[capacity][];
+		}
+		this.classes = new int[capacity][];
+		this.count = new int[capacity];
+	}
+
+	/**
+	 * Sets row j to value for every class; the arrays of a dropped row are
+	 * reused
+	 *
+	 * @param j
+	 *            the index of the row
+	 * @param value
+	 *            the value of every class
+	 */
+	void init(int j, double value) {
+		if (j >= capacity) {
+			int newCapacity = Math.max(j + 1, 2 * capacity);
+			if (singlePrecision) {
+				baselinef = Arrays.copyOf(baselinef, newCapacity);
+				valuesf = Arrays.copyOf(valuesf, newCapacity);
+			} else {
+				baseline = Arrays.copyOf(baseline, newCapacity);
+				values = Arrays.copyOf(values, newCapacity);
+			}
+			classes = Arrays.copyOf(classes, newCapacity);
+			count = Arrays.copyOf(count, newCapacity);
+			capacity = newCapacity;
+		}
+		if (classes[j] == null) {
+			classes[j] = NO_CLASSES;
+			if (singlePrecision) {
+				valuesf[j] = NO_VALUESF;
+			} else {
+				values[j] = NO_VALUES;
+			}
+		}
+		setBaseline(j, value);
+		count[j] = 0;
+	}
+
+	@Override
+	public double get(int j, int k) {
+		int index = Arrays.binarySearch(classes[j], 0, count[j], k);
+		return index >= 0 ? value(j, index) : baseline(j);
+	}
+
+	/**
+	 * w[j] += A_t * (delta - w[j]), where delta is 1 hot encoded on K
+	 */
+	void learn(int j, int K, double A_t) {
+		int entry = entry(j, K);
+		double b = baseline(j);
+		setBaseline(j, b + A_t * (0 - b));
+		for (int i = 0; i < count[j]; i++) {
+			double w = value(j, i);
+			setValue(j, i, w + A_t * ((i == entry ? 1 : 0) - w));
+		}
+	}
+
+	/**
+	 * Subtracts decrement from every class of row j and gives value to the
+	 * new, last class nb - 1
+	 */
+	void addClass(int j, int nb, double decrement, double value) {
+		setBaseline(j, baseline(j) - decrement);
+		for (int i = 0; i < count[j]; i++) {
+			setValue(j, i, value(j, i) - decrement);
+		}
+		setValue(j, entry(j, nb - 1), value);
+	}
+
+	/**
+	 * @return the position of the entry of class k in row j, added with the
+	 *         baseline value if missing
+	 */
+	private int entry(int j, int k) {
+		int index = Arrays.binarySearch(classes[j], 0, count[j], k);
+		if (index >= 0) {
+			return index;
+		}
+		index = -index - 1;
+		int n = count[j];
+		if (n == classes[j].length) {
+			int newLength = Math.max(2, 2 * n);
+			classes[j] = Arrays.copyOf(classes[j], newLength);
+			if (singlePrecision) {
+				valuesf[j] = Arrays.copyOf(valuesf[j], newLength);
+			} else {
+				values[j] = Arrays.copyOf(values[j], newLength);
+			}
+		}
+		System.arraycopy(classes[j], index, classes[j], index + 1, n - index);
+		if (singlePrecision) {
+			System.arraycopy(valuesf[j], index, valuesf[j], index + 1, n - index);
+		} else {
+			System.arraycopy(values[j], index, values[j], index + 1, n - index);
+		}
+		classes[j][index] = k;
+		setValue(j, index, baseline(j));
+		count[j] = n + 1;
+		return index;
+	}
+
+	@Override
+	public int entries(int j) {
+		return count[j];
+	}
+
+	@Override
+	public int classAt(int j, int i) {
+		return classes[j][i];
+	}
+
+	@Override
+	public double value(int j, int i) {
+		return singlePrecision ? valuesf[j][i] : values[j][i];
+	}
+
+	@Override
+	public double baseline(int j) {
+		return singlePrecision ? baselinef[j] : baseline[j];
+	}
+
+	/**
+	 * @return true if the values are stored as float
+	 */
+	boolean isSinglePrecision() {
+		return singlePrecision;
+	}
+
+	private void setValue(int j, int i, double value) {
+		if (singlePrecision) {
+			valuesf[j][i] = (float) value;
+		} else {
+			values[j][i] = value;
+		}
+	}
+
+	private void setBaseline(int j, double value) {
+		if (singlePrecision) {
+			baselinef[j] = (float) value;
+		} else {
+			baseline[j] = value;
+		}
+	}
+
+	/**
+	 * w[j] = a * w[j] + b * source.w[from]; row j gets an entry for every
+	 * class with an entry in either row
+	 */
+	void fuse(int j, double a, SparseRows source, int from, double b) {
+		for (int i = 0; i < source.count[from]; i++) {
+			entry(j, source.classes[from][i]);
+		}
+		for (int i = 0; i < count[j]; i++) {
+			setValue(j, i, a * value(j, i) + b * source.get(from, classes[j][i]));
+		}
+		setBaseline(j, a * baseline(j) + b * source.baseline(from));
+	}
+
+	/**
+	 * Copies row from of source into row to of this; both have the same
+	 * precision
+	 */
+	void copy(SparseRows source, int from, int to) {
+		init(to, 0);
+		int n = source.count[from];
+		classes[to] = Arrays.copyOf(source.classes[from], n);
+		if (singlePrecision) {
+			baselinef[to] = source.baselinef[from];
+			valuesf[to] = Arrays.copyOf(source.valuesf[from], n);
+		} else {
+			baseline[to] = source.baseline[from];
+			values[to] = Arrays.copyOf(source.values[from], n);
+		}
+		count[to] = n;
+	}
+
+	/**
+	 * @return a copy of the first n rows
+	 */
+	SparseRows copy(int n) {
+		SparseRows result = new SparseRows(Math.max(n, 1), singlePrecision);
+		for (int j = 0; j < n; j++) {
+			result.copy(this, j, j);
+		}
+		return result;
+	}
+
+	/**
+	 * @return the bytes allocated for the rows, including the spare capacity;
+	 *         array headers are not counted
+	 */
+	long storageBytes() {
+		int valueBytes = singlePrecision ? 4 : 8;
+		long bytes = (long) valueBytes * capacity + 4L * count.length;
+		for (int j = 0; j < classes.length; j++) {
+			if (classes[j] != null) {
+				bytes += (4L + valueBytes) * classes[j].length;
+			}
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,102 @@
+package ro.unitbv.pythia;
+
+import java.util.Arrays;
+
+/**
+ * Read access to sparse mapfield rows, as stored by SparseRows: row j holds
+ * baseline(j) for every class, except for its entries(j) explicit entries,
+ * sorted by class. Implemented by SparseRows, in memory, and by
+ * MappedSparseRows, over a model file.
+ */
+interface SparseRowsView {
+
+	/**
+	 * @return the number of explicit entries of row j
+	 */
+	int entries(int j);
+
+	/**
+	 * @return the class of entry i of row j
+	 */
+	int classAt(int j, int i);
+
+	/**
+	 * @return the value of entry i of row j
+	 */
+	double value(int j, int i);
+
+	/**
+	 * @return the value of the classes of row j without an entry
+	 */
+	double baseline(int j);
+
+	/**
+	 * @return w[j][k]
+	 */
+	default double get(int j, int k) {
+		int low = 0;
+		int high = entries(j) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int c = classAt(j, middle);
+			if (c < k) {
+				low = middle + 1;
+			} else if (c > k) {
+				high = middle - 1;
+			} else {
+				return value(j, middle);
+			}
+		}
+		return baseline(j);
+	}
+
+	/**
+	 * Same result as FuzzyVector.posMax on the dense row: the first class with
+	 * the maximum value. Only the explicit entries and the first class without
+	 * one are candidates, since the other classes repeat its value.
+	 *
+	 * @param j
+	 *            the index of the row
+	 * @param nb
+	 *            the number of classes
+	 * @return the index of the class with the maximum value
+	 */
+	default int posMax(int j, int nb) {
+		int n = entries(j);
+		int firstImplicit = n;
+		for (int i = 0; i < n; i++) {
+			if (classAt(j, i) != i) {
+				firstImplicit = i;
+				break;
+			}
+		}
+		boolean implicitSeen = firstImplicit >= nb;
+		double baseline = baseline(j);
+		int index = -1;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i <= n; i++) {
+			if (!implicitSeen && (i == n || classAt(j, i) > firstImplicit)) {
+				implicitSeen = true;
+				if (max < baseline) {
+					max = baseline;
+					index = firstImplicit;
+				}
+			}
+			if (i < n && max < value(j, i)) {
+				max = value(j, i);
+				index = classAt(j, i);
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the dense row j, of nb classes, in dest
+	 */
+	default void copyRow(int j, int nb, double[] dest) {
+		Arrays.fill(dest, 0, nb, baseline(j));
+		for (int i = 0; i < entries(j); i++) {
+			dest[classAt(j, i)] = value(j, i);
+		}
+	}
+}
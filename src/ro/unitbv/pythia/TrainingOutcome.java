@@ -0,0 +1,55 @@
+package ro.unitbv.pythia;
+
+/**
+ * Result of learning one pattern with FAMR.trainOne
+ */
+public final class TrainingOutcome {
+
+	private final int category;
+	private final boolean newCategory;
+	private final long latencyNanos;
+
+	TrainingOutcome(int category, boolean newCategory, long latencyNanos) {
+		this.category = category;
+		this.newCategory = newCategory;
+		this.latencyNanos = latencyNanos;
+	}
+
+	/**
+	 * @return true if the pattern was learned, false if match tracking
+	 *         rejected it and the network was left unchanged
+	 */
+	public boolean isAccepted() {
+		return category != -1;
+	}
+
+	/**
+	 * @return the index of the art_a category which learned the pattern; -1
+	 *         if the pattern was rejected
+	 */
+	public int getCategory() {
+		return category;
+	}
+
+	/**
+	 * @return true if the category was created for this pattern
+	 */
+	public boolean isNewCategory() {
+		return newCategory;
+	}
+
+	/**
+	 * @return the time spent learning the pattern, in nanoseconds
+	 */
+	public long getLatencyNanos() {
+		return latencyNanos;
+	}
+
+	/**
+	 * Human readable outcome
+	 */
+	public String toString() {
+		return (isAccepted() ? "learned by category " + category + (newCategory ? " (new)" : "") : "rejected")
+				+ " in " + latencyNanos + " ns";
+	}
+}
@@ -9,6 +9,7 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 /**
  * @author Lucian Sasu
@@ -145,4 +146,68 @@ public class Util {
 		}
 		
 	}
+
+	/**
+	 * Scales in from [inputMin, inputMax] to [0, 1], as
+	 * (in[i] - inputMin) / (inputMax - inputMin). Every path that scales
+	 * inputs goes through here, so they all get the same values and errors.
+	 * @param in the raw input
+	 * @param inputMin the min input
+	 * @param inputMax the max input
+	 * @param out receives the scaled input; at least in.length items
+	 */
+	static void scaleInput(double[] in, double inputMin, double inputMax, double[] out) {
+		if (inputMax <= inputMin) {
+			throw new RuntimeException("In scaleInput: inputMin should be less than inputMax, they are (" + inputMin
+					+ ", " + inputMax + ")");
+		}
+		double range = inputMax - inputMin;
+		for (int i = 0; i < in.length; i++) {
+			double value = in[i];
+			if (value < inputMin || value > inputMax) {
+				throw new RuntimeException("In scaleInput: input value " + value + " is outside [" + inputMin + ", "
+						+ inputMax + "]");
+			}
+			out[i] = (value - inputMin) / range;
+		}
+	}
+
+	/**
+	 * Complement codes in (Carpenter 1992): out = (in, 1 - in). The range of
+	 * in is checked on the way, whatever the debug mode.
+	 * @param in the scaled input, in [0, 1]
+	 * @param out receives the coded input; at least 2 * in.length items
+	 * @return |out|, as computed by Kernels.sum
+	 */
+	static double complementCode(double[] in, double[] out) {
+		int dim = in.length;
+		for (int i = 0; i < dim; i++) {
+			double value = in[i];
+			if (value < 0 || value > 1) {
+				throw new RuntimeException("The input vector is not between 0 and 1.");
+			}
+			out[i] = value;
+			out[dim + i] = 1 - value;
+		}
+		return Kernels.sum(out, 0, 2 * dim);
+	}
+
+	/**
+	 * @return a permutation of 0..n-1, shuffled by Fisher-Yates with the
+	 *         given seed
+	 */
+	static int[] permutation(int n, long seed) {
+		int order[] = new int[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		Random random = new Random(seed);
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		return order;
+	}
 }